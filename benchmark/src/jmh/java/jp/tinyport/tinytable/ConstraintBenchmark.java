@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ConstraintBenchmark {
+    private static final Table.Column ID = new Table.Column("id", Table.INTEGER, Table.NOT_NULL);
+    private static final Table.Column VAL = new Table.Column("val", Table.TEXT);
+
+    private Table mRefTable;
+
+    @Setup
+    public void setup() {
+        mRefTable = new RefTable();
+    }
+
+    @Benchmark
+    public String primaryKey() {
+        return new Table.PrimaryKey(ID.name, VAL.name).createStatement();
+    }
+
+    @Benchmark
+    public String unique() {
+        return new Table.Unique(ID.name, VAL.name).createStatement();
+    }
+
+    @Benchmark
+    public String foreignKey() {
+        return new Table.ForeignKey(ID.name, mRefTable, ID).createStatement();
+    }
+
+    static class RefTable extends Table {
+        RefTable() {
+            super("ref", ID, VAL);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class CreateSqlBenchmark {
+    private Table mTable;
+
+    @Setup
+    public void setup() {
+        mTable = new ExampleTable();
+    }
+
+    @Benchmark
+    public String createSql() {
+        return mTable.createSql();
+    }
+
+    @Benchmark
+    public String renderCreateSql() {
+        return mTable.renderCreateSql();
+    }
+
+    @Benchmark
+    public String createAddSql() {
+        return ExampleTable.EX_TEXT.createAddSql(mTable.tableName);
+    }
+
+    static class ExampleTable extends Table {
+        static final Column EX_TEXT = new Column("ex_text", TEXT);
+
+        ExampleTable() {
+            super("example",
+                    new Column("id", INTEGER, PRIMARY_KEY, AUTOINCREMENT, NOT_NULL),
+                    EX_TEXT,
+                    new Column("ex_numeric", NUMERIC),
+                    new Column("ex_real", REAL),
+                    new Column("ex_blob", BLOB),
+                    new Column("ex_default", TEXT, DEFAULT("def"))
+            );
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point reads from 4 threads through {@link DatabaseAccess} against one synchronized handle,
+ * on stand-in connections whose queries burn {@link #queryTokens} of CPU.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Threads(4)
+public class DatabaseAccessBenchmark {
+    @Param({"1", "4"})
+    public int readerCount;
+
+    @Param({"1000"})
+    public int queryTokens;
+
+    private DatabaseAccess mAccess;
+    private SqlExecutor mHandle;
+
+    @Setup
+    public void setup() {
+        mAccess = new DatabaseAccess(new ConnectionFactory() {
+            @Override
+            public SqlExecutor openWriter() {
+                return new StandInExecutor(queryTokens);
+            }
+
+            @Override
+            public SqlExecutor openReader() {
+                return new StandInExecutor(queryTokens);
+            }
+
+            @Override
+            public void close(SqlExecutor connection) {
+            }
+        }, readerCount, executor -> {
+        });
+        mAccess.ready().join();
+        mHandle = new StandInExecutor(queryTokens);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mAccess.close();
+    }
+
+    @Benchmark
+    public boolean pooledRead() {
+        return mAccess.read(DatabaseAccessBenchmark::query);
+    }
+
+    @Benchmark
+    public boolean synchronizedRead() {
+        synchronized (mHandle) {
+            return query(mHandle);
+        }
+    }
+
+    private static boolean query(SqlExecutor executor) {
+        try (RowCursor c = executor.query("SELECT 1")) {
+            return c.moveToNext();
+        }
+    }
+
+    static class StandInExecutor extends NoopExecutor {
+        private final int mQueryTokens;
+
+        StandInExecutor(int queryTokens) {
+            mQueryTokens = queryTokens;
+        }
+
+        @Override
+        public RowCursor query(String sql, String... selectionArgs) {
+            Blackhole.consumeCPU(mQueryTokens);
+            return new RowReaderBenchmark.ArrayCursor(new String[]{"1"}, new long[][]{{1}});
+        }
+    }
+}
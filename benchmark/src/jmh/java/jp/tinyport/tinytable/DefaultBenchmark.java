@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class DefaultBenchmark {
+    @Param({"16", "1024", "65536"})
+    public int length;
+
+    private String mPlain;
+    private String mQuoted;
+    private StringBuilder mBuilder;
+
+    @Setup
+    public void setup() {
+        final StringBuilder plain = new StringBuilder(length);
+        final StringBuilder quoted = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            plain.append((char) ('a' + i % 26));
+            quoted.append(i % 16 == 15 ? '\'' : (char) ('a' + i % 26));
+        }
+        mPlain = plain.toString();
+        mQuoted = quoted.toString();
+        mBuilder = new StringBuilder(length * 2 + 2);
+    }
+
+    @Benchmark
+    public Object defaultWithoutQuote() {
+        return Table.DEFAULT(mPlain);
+    }
+
+    @Benchmark
+    public Object defaultWithQuote() {
+        return Table.DEFAULT(mQuoted);
+    }
+
+    @Benchmark
+    public Object appendQuotedWithoutQuote() {
+        mBuilder.setLength(0);
+        return Table.appendQuoted(mBuilder, mPlain);
+    }
+
+    @Benchmark
+    public Object appendQuotedWithQuote() {
+        mBuilder.setLength(0);
+        return Table.appendQuoted(mBuilder, mQuoted);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class MigrationPlannerBenchmark {
+    private static final int TABLE_COUNT = 4;
+
+    @Param({"40", "400", "4000"})
+    public int versionCount;
+
+    private MigrationRunner mRunner;
+    private SchemaSet mSchema;
+
+    /**
+     * Each table cycles through adding a column, backfilling it, rebuilding to the same
+     * definition twice and adding and dropping a temporary column, one step per version.
+     */
+    @Setup
+    public void setup() {
+        mRunner = new MigrationRunner();
+        final Table[] tables = new Table[TABLE_COUNT];
+        for (int t = 0; t < TABLE_COUNT; t++) {
+            tables[t] = new HistoryTable("history" + t, versionCount);
+        }
+        mSchema = new SchemaSet(tables);
+
+        for (int version = 2; version <= versionCount; version++) {
+            final String tableName = "history" + version % TABLE_COUNT;
+            final Table.Column column = new Table.Column("c" + version, Table.TEXT);
+            switch (version / TABLE_COUNT % 5) {
+                case 0:
+                    mRunner.addStep(version, MigrationOp.addColumn(tableName, column));
+                    break;
+                case 1:
+                    mRunner.addStep(version, MigrationOp.update(tableName,
+                            "UPDATE " + tableName + " SET c0 = ?", version));
+                    break;
+                case 2:
+                case 3:
+                    mRunner.addStep(version, MigrationOp.rebuild(
+                            new HistoryTable(tableName, version / (TABLE_COUNT * 5))));
+                    break;
+                default:
+                    mRunner.addStep(version, MigrationOp.addColumn(tableName, column),
+                            MigrationOp.dropColumn(tableName, column.name));
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<Integer, List<MigrationOp>> compact() {
+        return mRunner.compact(1, versionCount, mSchema);
+    }
+
+    @Benchmark
+    public Map<Integer, List<MigrationOp>> compactLastTenVersions() {
+        return mRunner.compact(versionCount - 10, versionCount, mSchema);
+    }
+
+    @Benchmark
+    public MigrationPlan createPlan() {
+        return mRunner.createPlan(1, versionCount, mSchema);
+    }
+
+    static class HistoryTable extends Table {
+        HistoryTable(String tableName, int version) {
+            super(tableName,
+                    new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL),
+                    new Column("c0", INTEGER),
+                    new Column("c" + version, TEXT));
+        }
+    }
+}
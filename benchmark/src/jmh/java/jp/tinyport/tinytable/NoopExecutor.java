@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+class NoopExecutor implements SqlExecutor {
+    static final SqlStatement STATEMENT = new SqlStatement() {
+        @Override
+        public void bindNull(int index) {
+        }
+
+        @Override
+        public void bindLong(int index, long value) {
+        }
+
+        @Override
+        public void bindDouble(int index, double value) {
+        }
+
+        @Override
+        public void bindString(int index, String value) {
+        }
+
+        @Override
+        public void bindBlob(int index, byte[] value) {
+        }
+
+        @Override
+        public void clearBindings() {
+        }
+
+        @Override
+        public void execute() {
+        }
+
+        @Override
+        public long executeInsert() {
+            return 0;
+        }
+
+        @Override
+        public int executeUpdateDelete() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Override
+    public RowCursor query(String sql, String... selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void execSQL(String sql) {
+    }
+
+    @Override
+    public SqlStatement compileStatement(String sql) {
+        return STATEMENT;
+    }
+
+    @Override
+    public void beginTransaction() {
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+    }
+
+    @Override
+    public void endTransaction() {
+    }
+}
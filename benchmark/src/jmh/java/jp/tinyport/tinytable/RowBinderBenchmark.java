@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-row cost of {@link RowBinder}; {@code gc.alloc.rate.norm} should stay at 0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RowBinderBenchmark {
+    private RowBinder mBinder;
+    private long mValue;
+
+    @Setup
+    public void setup() {
+        mBinder = new RowBinder(new NoopExecutor(), new NumericTable(), 256);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mBinder.close();
+    }
+
+    @Benchmark
+    public void bindRow() {
+        final long value = mValue++;
+        mBinder.bindLong(NumericTable.INTEGER_COLUMN, value)
+                .bindLong(NumericTable.BIGINT_COLUMN, value << 20)
+                .bindDouble(NumericTable.REAL_COLUMN, value * 0.5)
+                .bindDouble(NumericTable.DOUBLE_COLUMN, value * 0.25)
+                .endRow();
+    }
+
+    static class NumericTable extends Table {
+        static final Column INTEGER_COLUMN = new Column("ex_integer", INTEGER);
+        static final Column BIGINT_COLUMN = new Column("ex_bigint", BIGINT);
+        static final Column REAL_COLUMN = new Column("ex_real", REAL);
+        static final Column DOUBLE_COLUMN = new Column("ex_double", DOUBLE);
+
+        NumericTable() {
+            super("numeric", INTEGER_COLUMN, BIGINT_COLUMN, REAL_COLUMN, DOUBLE_COLUMN);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading {@link #ROW_COUNT} rows from an in-memory {@link RowCursor}: name lookups and boxing
+ * per row against {@link RowReader} with a reused row object or {@link ColumnPage}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class RowReaderBenchmark {
+    private static final int ROW_COUNT = 1024;
+
+    private final RowBinderBenchmark.NumericTable mTable = new RowBinderBenchmark.NumericTable();
+    private ArrayCursor mCursor;
+    private ColumnPage mPage;
+    private final Row mRow = new Row();
+
+    @Setup
+    public void setup() {
+        final long[][] values = new long[ROW_COUNT][4];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            values[i] = new long[]{i, (long) i << 20, i, i};
+        }
+        mCursor = new ArrayCursor(new String[]{"ex_integer", "ex_bigint", "ex_real", "ex_double"},
+                values);
+        mPage = new ColumnPage(256, mTable);
+    }
+
+    @Benchmark
+    public double byName() {
+        mCursor.rewind();
+        double sum = 0;
+        while (mCursor.moveToNext()) {
+            final Object[] row = {
+                    mCursor.getLong(mCursor.getColumnIndex("ex_integer")),
+                    mCursor.getLong(mCursor.getColumnIndex("ex_bigint")),
+                    mCursor.getDouble(mCursor.getColumnIndex("ex_real")),
+                    mCursor.getDouble(mCursor.getColumnIndex("ex_double")),
+            };
+            sum += (Long) row[0] + (Long) row[1] + (Double) row[2] + (Double) row[3];
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public double mapper() {
+        mCursor.rewind();
+        final RowReader reader = new RowReader(mCursor, mTable);
+        double sum = 0;
+        while (reader.next(mRow, Row.MAPPER)) {
+            sum += mRow.integer + mRow.bigint + mRow.real + mRow.dbl;
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public double page() {
+        mCursor.rewind();
+        final RowReader reader = new RowReader(mCursor, mTable);
+        double sum = 0;
+        int size;
+        while ((size = reader.read(mPage)) != 0) {
+            final long[] integers = mPage.getLongs(0);
+            final double[] reals = mPage.getDoubles(2);
+            for (int i = 0; i < size; i++) {
+                sum += integers[i] + reals[i];
+            }
+        }
+
+        return sum;
+    }
+
+    static class Row {
+        static final RowMapper<Row> MAPPER = (reader, row) -> {
+            row.integer = reader.getLong(0);
+            row.bigint = reader.getLong(1);
+            row.real = reader.getDouble(2);
+            row.dbl = reader.getDouble(3);
+        };
+
+        long integer;
+        long bigint;
+        double real;
+        double dbl;
+    }
+
+    static class ArrayCursor implements RowCursor {
+        private final String[] mNames;
+        private final long[][] mValues;
+        private int mPosition = -1;
+
+        ArrayCursor(String[] names, long[][] values) {
+            mNames = names;
+            mValues = values;
+        }
+
+        void rewind() {
+            mPosition = -1;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            return ++mPosition < mValues.length;
+        }
+
+        @Override
+        public int getColumnIndex(String columnName) {
+            for (int i = 0; i < mNames.length; i++) {
+                if (mNames[i].equals(columnName)) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        @Override
+        public int getType(int columnIndex) {
+            // the storage classes SQLite gives the values of NumericTable.
+            return columnIndex < 2 ? FIELD_TYPE_INTEGER : FIELD_TYPE_FLOAT;
+        }
+
+        @Override
+        public boolean isNull(int columnIndex) {
+            return false;
+        }
+
+        @Override
+        public long getLong(int columnIndex) {
+            return mValues[mPosition][columnIndex];
+        }
+
+        @Override
+        public double getDouble(int columnIndex) {
+            return mValues[mPosition][columnIndex];
+        }
+
+        @Override
+        public String getString(int columnIndex) {
+            return Long.toString(mValues[mPosition][columnIndex]);
+        }
+
+        @Override
+        public byte[] getBlob(int columnIndex) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
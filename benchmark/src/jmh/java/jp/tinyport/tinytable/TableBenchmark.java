@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class TableBenchmark {
+    @Param({"10", "50", "200"})
+    public int columnCount;
+
+    private Table.Column mFirst;
+    private Table.Column[] mRest;
+    private Table mTable;
+
+    @Setup
+    public void setup() {
+        mFirst = new Table.Column("c0", Table.INTEGER, Table.PRIMARY_KEY, Table.NOT_NULL);
+        mRest = new Table.Column[columnCount - 1];
+        for (int i = 0; i < mRest.length; i++) {
+            mRest[i] = new Table.Column("c" + (i + 1), Table.TEXT);
+        }
+        mTable = new WideTable(mFirst, mRest);
+    }
+
+    @Benchmark
+    public Table construct() {
+        return new WideTable(mFirst, mRest);
+    }
+
+    @Benchmark
+    public String createSql() {
+        return mTable.createSql();
+    }
+
+    @Benchmark
+    public String renderCreateSql() {
+        return mTable.renderCreateSql();
+    }
+
+    @Benchmark
+    public String constructAndCreateSql() {
+        return new WideTable(mFirst, mRest).createSql();
+    }
+
+    static class WideTable extends Table {
+        WideTable(Column column, Column... rest) {
+            super("wide", column, rest);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable.example;
+
+import jp.tinyport.tinytable.Schema;
+
+/**
+ * {@link MyDatabase.ExampleTable} declared at compile time. see the generated
+ * {@code ExampleSchemaTable}.
+ */
+@Schema(name = "example")
+interface ExampleSchema {
+    @Schema.Column(type = "INTEGER", primaryKey = true, autoincrement = true, notNull = true)
+    String ID = "id";
+
+    @Schema.Column(type = "TEXT")
+    String TEXT = "ex_text";
+
+    @Schema.Column(type = "NUMERIC")
+    String NUMERIC = "ex_numeric";
+
+    @Schema.Column(type = "REAL")
+    String REAL = "ex_real";
+
+    @Schema.Column(type = "BLOB")
+    String BLOB = "ex_blob";
+
+    @Schema.Column(type = "TEXT", defaultValue = "def")
+    String DEFAULT = "ex_default";
+}
@@ -23,6 +23,10 @@ import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
 import android.util.Log;
 
+import jp.tinyport.tinytable.DatabaseAccess;
+import jp.tinyport.tinytable.HistogramMetrics;
+import jp.tinyport.tinytable.Metrics;
+import jp.tinyport.tinytable.RowCursor;
 import jp.tinyport.tinytable.example.addcolumn.AddColumnDatabase;
 
 public class MainActivity extends Activity {
@@ -31,6 +35,9 @@ public class MainActivity extends Activity {
         super.onCreate(savedInstanceState);
         log("[MainActivity] Hello");
 
+        final HistogramMetrics metrics = new HistogramMetrics();
+        Metrics.install(metrics);
+
         final MyDatabase db = new MyDatabase(getApplicationContext());
         deleteDatabase(db.getDatabaseName());
 
@@ -38,6 +45,8 @@ public class MainActivity extends Activity {
         log("[MainActivity] Example2Table=%s", db.example2Table.createSql());
         log("[MainActivity] Example3Table=%s", db.example3Table.createSql());
         log("[MainActivity] Example4Table=%s", db.example4Table.createSql());
+        log("[MainActivity] ExampleSchemaTable matches ExampleTable=%s",
+                ExampleSchemaTable.CREATE_SQL.equals(db.exampleTable.createSql()));
         db.getWritableDatabase();
 
         deleteDatabase(AddColumnDatabase.DATABASE_NAME);
@@ -56,6 +65,19 @@ public class MainActivity extends Activity {
             log("[MainActivity] newTable=%s", DatabaseUtils.dumpCursorToString(c));
         }
 
+        try (DatabaseAccess access = addColumnDatabase.openAccess(this, 2)) {
+            final String sql = "SELECT count(*) FROM " + addColumnDatabase.table.tableName;
+            final long rows = access.read(reader -> {
+                try (RowCursor c = reader.query(sql)) {
+                    return c.moveToNext() ? c.getLong(0) : 0L;
+                }
+            });
+            log("[MainActivity] newTable rows=%d", rows);
+        }
+
+        log("[MainActivity] metrics:\n%s", metrics);
+        Metrics.install(Metrics.NONE);
+
         log("[MainActivity] Bye");
         finish();
     }
@@ -20,6 +20,9 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import java.util.EnumSet;
+
+import jp.tinyport.tinytable.SchemaSet;
 import jp.tinyport.tinytable.Table;
 
 class MyDatabase extends SQLiteOpenHelper {
@@ -27,6 +30,7 @@ class MyDatabase extends SQLiteOpenHelper {
     final Example2Table example2Table;
     final Example3Table example3Table;
     final Example4Table example4Table;
+    final SchemaSet schema;
 
     MyDatabase(Context context) {
         super(context, "example.db", null, 1);
@@ -35,14 +39,14 @@ class MyDatabase extends SQLiteOpenHelper {
         example2Table = new Example2Table();
         example3Table = new Example3Table(example2Table);
         example4Table = new Example4Table();
+        schema = new SchemaSet(exampleTable, example2Table, example3Table, example4Table);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        db.execSQL(exampleTable.createSql());
-        db.execSQL(example2Table.createSql());
-        db.execSQL(example3Table.createSql());
-        db.execSQL(example4Table.createSql());
+        for (String sql : schema.createSchemaSql()) {
+            db.execSQL(sql);
+        }
     }
 
     @Override
@@ -58,7 +62,9 @@ class MyDatabase extends SQLiteOpenHelper {
                     new Column("ex_numeric", NUMERIC),
                     new Column("ex_real", REAL),
                     new Column("ex_blob", BLOB),
-                    new Column("ex_default", TEXT, DEFAULT("def"))
+                    new Column("ex_default", TEXT, DEFAULT("def")),
+                    // Android's SQLite is built with FTS3/4 only.
+                    new FullText("example_fts", "ex_text").fts4()
             );
         }
     }
@@ -70,13 +76,14 @@ class MyDatabase extends SQLiteOpenHelper {
         static final Column TEXT2 = new Column("text2", TEXT);
 
         Example2Table() {
-            super("example2",
+            super("example2", EnumSet.of(Option.WITHOUT_ROWID),
                     ID,
                     VAL,
                     TEXT1,
                     TEXT2,
                     new PrimaryKey(ID.name, VAL.name),
-                    new Unique(TEXT1.name, TEXT2.name)
+                    new Unique(TEXT1.name, TEXT2.name),
+                    new Index("example2_text2", TEXT2.name).where(TEXT2.name + " IS NOT NULL")
             );
         }
     }
@@ -16,11 +16,14 @@
 
 package jp.tinyport.tinytable.example.addcolumn;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
+import jp.tinyport.tinytable.DatabaseAccess;
+import jp.tinyport.tinytable.MigrationOp;
 import jp.tinyport.tinytable.Table;
+import jp.tinyport.tinytable.TableStatements;
 
 public final class AddColumnDatabase {
     public static final String DATABASE_NAME = DbOpenHelper.DATABASE_NAME;
@@ -44,11 +47,13 @@ public final class AddColumnDatabase {
             oldTable = mOpenHelperOld.table;
 
             mOpenHelperOld.setInitialPopulation(db -> {
-                final ContentValues values = new ContentValues();
-                values.put(DbOpenHelper.OldTable.SPECIAL_COLUMN.name, SpecialType.NONE.type);
-                values.put(DbOpenHelper.OldTable.SPECIAL_COLUMN.name,
-                        SpecialType.SPECIAL.type);
-                db.insert(mOpenHelperOld.table.tableName, null, values);
+                final TableStatements statements = mOpenHelperOld.table.getStatements();
+                try (SQLiteStatement statement = db.compileStatement(statements.insertSql)) {
+                    statement.bindString(
+                            statements.getInsertIndex(DbOpenHelper.OldTable.SPECIAL_COLUMN),
+                            SpecialType.SPECIAL.type);
+                    statement.executeInsert();
+                }
             });
         }
 
@@ -60,24 +65,30 @@ public final class AddColumnDatabase {
             mOpenHelper = new DbOpenHelper(context, DbOpenHelper.Version.LATEST);
             table = mOpenHelper.table;
 
-            mOpenHelper.addMigrateStep(DbOpenHelper.Version.INTERMEDIATE.version, db -> {
-                db.execSQL(DbOpenHelper.IntermediateTable.INTERMEDIATE_COLUMN.createAddSql(
-                        mOpenHelper.table.tableName));
-
-                final ContentValues values = new ContentValues();
-                values.put(DbOpenHelper.IntermediateTable.INTERMEDIATE_COLUMN.name,
-                        "special!");
-                db.update(mOpenHelper.table.tableName, values,
-                        DbOpenHelper.IntermediateTable.SPECIAL_COLUMN.name + " = ?",
-                        new String[]{
-                                SpecialType.SPECIAL.type
-                        });
-            });
+            final String tableName = mOpenHelper.table.tableName;
+            mOpenHelper.addMigrateStep(DbOpenHelper.Version.INTERMEDIATE.version,
+                    MigrationOp.addColumn(tableName,
+                            DbOpenHelper.IntermediateTable.INTERMEDIATE_COLUMN),
+                    MigrationOp.update(tableName, "UPDATE " + tableName + " SET " +
+                                    DbOpenHelper.IntermediateTable.INTERMEDIATE_COLUMN.name +
+                                    " = ? WHERE " +
+                                    DbOpenHelper.IntermediateTable.SPECIAL_COLUMN.name + " = ?",
+                            "special!", SpecialType.SPECIAL.type)
+                            .writing(DbOpenHelper.IntermediateTable.INTERMEDIATE_COLUMN.name));
         }
 
         return mOpenHelper.getWritableDatabase();
     }
 
+    /**
+     * @return access to the latest database, migrated on the writer thread before any read.
+     */
+    public DatabaseAccess openAccess(Context context, int readerCount) {
+        return new DatabaseAccess(new SQLiteConnectionFactory(context, this), readerCount,
+                writer -> {
+                });
+    }
+
     enum SpecialType {
         SPECIAL("special"), NONE("none");
 
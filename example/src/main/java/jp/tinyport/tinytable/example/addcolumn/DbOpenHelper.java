@@ -17,26 +17,27 @@
 package jp.tinyport.tinytable.example.addcolumn;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.text.TextUtils;
-import android.util.SparseArray;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
+import jp.tinyport.tinytable.ChunkedRebuild;
+import jp.tinyport.tinytable.MigrationOp;
+import jp.tinyport.tinytable.MigrationPlan;
+import jp.tinyport.tinytable.MigrationRunner;
+import jp.tinyport.tinytable.MigrationStep;
+import jp.tinyport.tinytable.SchemaFingerprint;
 import jp.tinyport.tinytable.Table;
 
 class DbOpenHelper extends SQLiteOpenHelper {
     static final String DATABASE_NAME = "add-column.db";
+    private static final int REBUILD_CHUNK_SIZE = 1000;
 
     final Table table;
+    private final SchemaFingerprint mFingerprint;
     private Consumer<SQLiteDatabase> mInitialPopulation;
-    private final SparseArray<Consumer<SQLiteDatabase>> mMigrateConsumers;
+    private final MigrationRunner mMigrationRunner;
 
     DbOpenHelper(Context context, Version version) {
         super(context, DATABASE_NAME, null, version.version);
@@ -53,70 +54,71 @@ class DbOpenHelper extends SQLiteOpenHelper {
                 throw new UnsupportedOperationException();
         }
 
-        mMigrateConsumers = new SparseArray<>();
+        mFingerprint = SchemaFingerprint.of(table);
+        mMigrationRunner = new MigrationRunner();
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        db.execSQL(table.createSql());
-        if (mInitialPopulation != null) {
-            mInitialPopulation.accept(db);
+        final MigrationPlan.Builder plan = MigrationPlan.builder();
+        if (mInitialPopulation == null) {
+            for (String sql : table.createSchemaSql()) {
+                plan.execSQL(sql);
+            }
+        } else {
+            plan.populate(table, executor -> mInitialPopulation.accept(db));
         }
+
+        runWithFingerprint(db, plan);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        upgrade(db, oldVersion, newVersion);
-        diffMigrate(db, table);
+        runWithFingerprint(db, MigrationPlan.builder()
+                .append(mMigrationRunner.createPlan(oldVersion, newVersion, table)));
     }
 
     @Override
-    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        downgrade(db, oldVersion, newVersion);
-        diffMigrate(db, table);
+    public void onOpen(SQLiteDatabase db) {
+        if (db.isReadOnly()) {
+            return;
+        }
+
+        final SQLiteExecutor executor = new SQLiteExecutor(db);
+        new ChunkedRebuild(executor, REBUILD_CHUNK_SIZE).recover();
+
+        // a stale fingerprint means the schema was changed without bumping the version.
+        if (!mFingerprint.matches(executor)) {
+            runWithFingerprint(db, MigrationPlan.builder().migrate(table));
+        }
     }
 
-    public void setInitialPopulation(Consumer<SQLiteDatabase> consumer) {
-        mInitialPopulation = consumer;
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        runWithFingerprint(db, MigrationPlan.builder()
+                .append(mMigrationRunner.createPlan(oldVersion, newVersion, table)));
     }
 
-    public void addMigrateStep(int version, Consumer<SQLiteDatabase> consumer) {
-        mMigrateConsumers.put(version, consumer);
+    // stores the fingerprint in the same transaction as the schema change it describes.
+    private void runWithFingerprint(SQLiteDatabase db, MigrationPlan.Builder plan) {
+        mFingerprint.plan(plan);
+        plan.build().run(new SQLiteExecutor(db));
     }
 
-    private void upgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        for (int index = 0, l = mMigrateConsumers.size(); index < l; index++) {
-            final int version = mMigrateConsumers.keyAt(index);
-            if (oldVersion < version && version <= newVersion) {
-                mMigrateConsumers.valueAt(index).accept(db);
-            }
-        }
+    public void setInitialPopulation(Consumer<SQLiteDatabase> consumer) {
+        mInitialPopulation = consumer;
     }
 
-    private void downgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        throw new UnsupportedOperationException("TODO");
+    public void addMigrateStep(int version, MigrationStep step) {
+        mMigrationRunner.addStep(version, step);
     }
 
-    private static void diffMigrate(SQLiteDatabase db, Table table) {
-        final String tmpTable = "tmp_old_table_" + System.currentTimeMillis();
-        db.execSQL("ALTER TABLE " + table.tableName + " RENAME TO " + tmpTable);
-        db.execSQL(table.createSql());
-        final List<String> source =
-                new ArrayList<>(Arrays.asList(retrieveColumns(db, tmpTable)));
-        final List<String> target = Arrays.stream(table.getColumns())
-                .map(column -> column.name)
-                .collect(Collectors.toList());
-
-        source.retainAll(target);
-        db.execSQL("INSERT INTO " + table.tableName + " (" + TextUtils.join(", ", source) +
-        ") SELECT " + TextUtils.join(", ", source) + " FROM " + tmpTable);
-        db.execSQL("DROP TABLE " + tmpTable);
+    public void addMigrateStep(int version, MigrationOp op, MigrationOp... rest) {
+        mMigrationRunner.addStep(version, op, rest);
     }
 
-    private static String[] retrieveColumns(SQLiteDatabase db, String table) {
-        try (Cursor c = db.query(table, null, null, null, null, null, null, "1")) {
-            return c.getColumnNames();
-        }
+    public void addDowngradeStep(int version, MigrationStep step) {
+        mMigrationRunner.addDowngradeStep(version, step);
     }
 
     enum Version {
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable.example.addcolumn;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import jp.tinyport.tinytable.ConnectionFactory;
+import jp.tinyport.tinytable.SqlExecutor;
+
+/**
+ * Writer from {@link AddColumnDatabase#getDatabase(Context)}, which migrates on open, and
+ * read-only connections to the same file.
+ */
+class SQLiteConnectionFactory implements ConnectionFactory {
+    private final Context mContext;
+    private final AddColumnDatabase mDatabase;
+
+    SQLiteConnectionFactory(Context context, AddColumnDatabase database) {
+        mContext = context.getApplicationContext();
+        mDatabase = database;
+    }
+
+    @Override
+    public SqlExecutor openWriter() {
+        return new SQLiteExecutor(mDatabase.getDatabase(mContext));
+    }
+
+    @Override
+    public SqlExecutor openReader() {
+        return new SQLiteExecutor(SQLiteDatabase.openDatabase(
+                mContext.getDatabasePath(AddColumnDatabase.DATABASE_NAME).getPath(), null,
+                SQLiteDatabase.OPEN_READONLY));
+    }
+
+    @Override
+    public void close(SqlExecutor connection) {
+        ((SQLiteExecutor) connection).close();
+    }
+}
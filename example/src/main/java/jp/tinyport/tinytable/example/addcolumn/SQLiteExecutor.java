@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable.example.addcolumn;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import jp.tinyport.tinytable.RowCursor;
+import jp.tinyport.tinytable.SqlExecutor;
+import jp.tinyport.tinytable.SqlStatement;
+
+class SQLiteExecutor implements SqlExecutor {
+    private final SQLiteDatabase mDb;
+
+    SQLiteExecutor(SQLiteDatabase db) {
+        mDb = db;
+    }
+
+    @Override
+    public RowCursor query(String sql, String... selectionArgs) {
+        return new CursorRowCursor(mDb.rawQuery(sql, selectionArgs));
+    }
+
+    @Override
+    public void execSQL(String sql) {
+        mDb.execSQL(sql);
+    }
+
+    @Override
+    public SqlStatement compileStatement(String sql) {
+        return new Statement(mDb.compileStatement(sql));
+    }
+
+    @Override
+    public void beginTransaction() {
+        mDb.beginTransaction();
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        mDb.setTransactionSuccessful();
+    }
+
+    @Override
+    public void endTransaction() {
+        mDb.endTransaction();
+    }
+
+    void close() {
+        mDb.close();
+    }
+
+    static class Statement implements SqlStatement {
+        private final SQLiteStatement mStatement;
+
+        Statement(SQLiteStatement statement) {
+            mStatement = statement;
+        }
+
+        @Override
+        public void bindNull(int index) {
+            mStatement.bindNull(index);
+        }
+
+        @Override
+        public void bindLong(int index, long value) {
+            mStatement.bindLong(index, value);
+        }
+
+        @Override
+        public void bindDouble(int index, double value) {
+            mStatement.bindDouble(index, value);
+        }
+
+        @Override
+        public void bindString(int index, String value) {
+            mStatement.bindString(index, value);
+        }
+
+        @Override
+        public void bindBlob(int index, byte[] value) {
+            mStatement.bindBlob(index, value);
+        }
+
+        @Override
+        public void clearBindings() {
+            mStatement.clearBindings();
+        }
+
+        @Override
+        public void execute() {
+            mStatement.execute();
+        }
+
+        @Override
+        public long executeInsert() {
+            return mStatement.executeInsert();
+        }
+
+        @Override
+        public int executeUpdateDelete() {
+            return mStatement.executeUpdateDelete();
+        }
+
+        @Override
+        public void close() {
+            mStatement.close();
+        }
+    }
+
+    static class CursorRowCursor implements RowCursor {
+        private final Cursor mCursor;
+
+        CursorRowCursor(Cursor cursor) {
+            mCursor = cursor;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            return mCursor.moveToNext();
+        }
+
+        @Override
+        public int getColumnIndex(String columnName) {
+            return mCursor.getColumnIndex(columnName);
+        }
+
+        @Override
+        public int getType(int columnIndex) {
+            // the FIELD_TYPE_ constants have the values of Cursor's.
+            return mCursor.getType(columnIndex);
+        }
+
+        @Override
+        public boolean isNull(int columnIndex) {
+            return mCursor.isNull(columnIndex);
+        }
+
+        @Override
+        public long getLong(int columnIndex) {
+            return mCursor.getLong(columnIndex);
+        }
+
+        @Override
+        public double getDouble(int columnIndex) {
+            return mCursor.getDouble(columnIndex);
+        }
+
+        @Override
+        public String getString(int columnIndex) {
+            return mCursor.getString(columnIndex);
+        }
+
+        @Override
+        public byte[] getBlob(int columnIndex) {
+            return mCursor.getBlob(columnIndex);
+        }
+
+        @Override
+        public void close() {
+            mCursor.close();
+        }
+    }
+}
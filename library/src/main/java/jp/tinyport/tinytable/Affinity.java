@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.Locale;
+
+/**
+ * Column type affinity.
+ *
+ * @see <a href="https://www.sqlite.org/datatype3.html#determination_of_column_affinity">
+ * Determination Of Column Affinity</a>
+ */
+public enum Affinity {
+    INTEGER, TEXT, BLOB, REAL, NUMERIC;
+
+    public static Affinity of(String declaredType) {
+        final String type = declaredType.toUpperCase(Locale.ROOT);
+        if (type.contains("INT")) {
+            return INTEGER;
+        }
+
+        if (type.contains("CHAR") || type.contains("CLOB") || type.contains("TEXT")) {
+            return TEXT;
+        }
+
+        if (type.contains("BLOB") || type.trim().isEmpty()) {
+            return BLOB;
+        }
+
+        if (type.contains("REAL") || type.contains("FLOA") || type.contains("DOUB")) {
+            return REAL;
+        }
+
+        return NUMERIC;
+    }
+}
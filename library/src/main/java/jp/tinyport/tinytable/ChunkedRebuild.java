@@ -0,0 +1,352 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Table rebuild that copies rows in rowid-range chunks, one transaction per chunk.
+ * <p>
+ * Progress is kept in {@link #PROGRESS_TABLE}, so a rebuild interrupted by process death is
+ * resumed by {@link #recover()} on the next open instead of being restarted. Peak journal
+ * size and write lock hold time are bounded by the chunk size. The new table is created under a
+ * {@link SchemaDiff#TMP_TABLE_PREFIX} name without its UNIQUE constraints, and triggers mirror
+ * every insert, update and delete of the old table into it by rowid, so the old table keeps
+ * serving reads and writes until the last chunk is copied. The statements that then replace the
+ * old table and build the constraints and secondary indexes are kept in {@link #INDEX_TABLE},
+ * see {@link SchemaDiff#createSwapSql(String)} and {@link Table#createDeferredIndexSql()}.
+ * <p>
+ * Deletes done by REPLACE conflict resolution only fire the mirroring delete trigger while
+ * {@code PRAGMA recursive_triggers} is on.
+ */
+public class ChunkedRebuild {
+    public static final String PROGRESS_TABLE = "tinytable_rebuild_progress";
+    public static final String INDEX_TABLE = "tinytable_rebuild_index";
+
+    /**
+     * Prefix of the old tables that earlier versions renamed aside before copying their rows
+     * into the new table.
+     */
+    private static final String LEGACY_TMP_TABLE_PREFIX = "tmp_old_table_";
+
+    private final SqlExecutor mExecutor;
+    private final int mChunkSize;
+
+    public ChunkedRebuild(SqlExecutor executor, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+
+        mExecutor = Objects.requireNonNull(executor);
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Rebuilds {@code diff.from} into {@code diff.to}. Falls back to
+     * {@link SchemaDiff#createDeferredMigrationSql()} in a single transaction when no rebuild
+     * is needed, or when either table is a {@link Table.Option#WITHOUT_ROWID} table that has no
+     * rowid to chunk and mirror by.
+     */
+    public void rebuild(SchemaDiff diff) {
+        final Metrics metrics = Metrics.installed();
+        final long start = Metrics.nanoTime(metrics);
+        rebuildTable(diff);
+        if (metrics != Metrics.NONE) {
+            metrics.tableMigrated(diff.to.tableName, System.nanoTime() - start);
+        }
+    }
+
+    private void rebuildTable(SchemaDiff diff) {
+        if (!diff.requiresRebuild() ||
+                diff.from.getOptions().contains(Table.Option.WITHOUT_ROWID) ||
+                diff.to.getOptions().contains(Table.Option.WITHOUT_ROWID)) {
+            inTransaction(() -> {
+                for (String sql : diff.createDeferredMigrationSql()) {
+                    mExecutor.execSQL(sql);
+                }
+            });
+            return;
+        }
+
+        final String tmpTableName = SchemaDiff.TMP_TABLE_PREFIX + System.currentTimeMillis();
+        inTransaction(() -> {
+            mExecutor.execSQL(createProgressTableSql());
+            mExecutor.execSQL(createIndexTableSql());
+            for (String sql : diff.createDropIndexSql()) {
+                mExecutor.execSQL(sql);
+            }
+            mExecutor.execSQL(diff.createTableSql(tmpTableName, true));
+
+            final List<String> finishSql = new ArrayList<>(diff.createSwapSql(tmpTableName));
+            finishSql.addAll(diff.createIndexSql(true));
+            if (diff.getCommonColumnNames().isEmpty()) {
+                for (String sql : finishSql) {
+                    mExecutor.execSQL(sql);
+                }
+                return;
+            }
+
+            // the old table is replaced and indexes are built by copy() once every row is in.
+            for (String sql : diff.createMirrorTriggerSql(tmpTableName)) {
+                mExecutor.execSQL(sql);
+            }
+            final SqlStatement index = mExecutor.compileStatement("INSERT INTO " +
+                    INDEX_TABLE + " (table_name, sql) VALUES (?, ?)");
+            final SqlStatement progress = mExecutor.compileStatement("INSERT INTO " +
+                    PROGRESS_TABLE + " (table_name, source_table_name, copy_sql, last_rowid) " +
+                    "VALUES (?, ?, ?, ?)");
+            try {
+                for (String sql : finishSql) {
+                    index.bindString(1, diff.to.tableName);
+                    index.bindString(2, sql);
+                    index.executeInsert();
+                }
+
+                progress.bindString(1, diff.to.tableName);
+                progress.bindString(2, diff.from.tableName);
+                progress.bindString(3, diff.createMirrorCopySql(tmpTableName));
+                progress.bindLong(4, Long.MIN_VALUE);
+                progress.executeInsert();
+            } finally {
+                index.close();
+                progress.close();
+            }
+        });
+
+        copy(diff.to.tableName);
+    }
+
+    /**
+     * Resumes interrupted rebuilds, then drops the {@link SchemaDiff#TMP_TABLE_PREFIX} tables
+     * and the old tables of earlier versions that no rebuild owns anymore. Call on open.
+     */
+    public void recover() {
+        final List<String> tableNames = new ArrayList<>();
+        if (exists(PROGRESS_TABLE)) {
+            upgradeLegacyProgress();
+            try (RowCursor c = mExecutor.query("SELECT table_name FROM " + PROGRESS_TABLE)) {
+                while (c.moveToNext()) {
+                    tableNames.add(c.getString(0));
+                }
+            }
+        }
+
+        for (String tableName : tableNames) {
+            copy(tableName);
+        }
+
+        // every rebuild is finished, so no progress row owns the tables left.
+        final List<String> staleTables = new ArrayList<>();
+        try (RowCursor c = mExecutor.query("SELECT name FROM sqlite_master " +
+                "WHERE type = 'table' AND (name LIKE ? ESCAPE '\\' OR name LIKE ? ESCAPE '\\')",
+                SchemaDiff.TMP_TABLE_PREFIX.replace("_", "\\_") + "%",
+                LEGACY_TMP_TABLE_PREFIX.replace("_", "\\_") + "%")) {
+            while (c.moveToNext()) {
+                staleTables.add(c.getString(0));
+            }
+        }
+
+        if (!staleTables.isEmpty()) {
+            inTransaction(() -> {
+                for (String staleTable : staleTables) {
+                    for (String sql : SchemaDiff.createDropMirrorTriggerSql(staleTable)) {
+                        mExecutor.execSQL(sql);
+                    }
+                    mExecutor.execSQL("DROP TABLE " + staleTable);
+                }
+            });
+        }
+    }
+
+    /**
+     * Converts the progress of rebuilds started by earlier versions, which renamed the old
+     * table aside and copied from it into the new table, so that {@link #copy(String)} resumes
+     * them and drops the old table once done.
+     */
+    private void upgradeLegacyProgress() {
+        boolean legacy = false;
+        try (RowCursor c = mExecutor.query("PRAGMA table_info(" + PROGRESS_TABLE + ")")) {
+            final int name = c.getColumnIndex("name");
+            while (c.moveToNext()) {
+                legacy |= "tmp_table_name".equals(c.getString(name));
+            }
+        }
+
+        if (!legacy) {
+            return;
+        }
+
+        final List<String[]> rows = new ArrayList<>();
+        try (RowCursor c = mExecutor.query("SELECT table_name, tmp_table_name, copy_sql, " +
+                "last_rowid FROM " + PROGRESS_TABLE)) {
+            while (c.moveToNext()) {
+                rows.add(new String[]{c.getString(0), c.getString(1), c.getString(2),
+                        Long.toString(c.getLong(3))});
+            }
+        }
+
+        inTransaction(() -> {
+            mExecutor.execSQL("DROP TABLE " + PROGRESS_TABLE);
+            mExecutor.execSQL(createProgressTableSql());
+            mExecutor.execSQL(createIndexTableSql());
+            final SqlStatement index = mExecutor.compileStatement("INSERT INTO " +
+                    INDEX_TABLE + " (table_name, sql) VALUES (?, ?)");
+            final SqlStatement progress = mExecutor.compileStatement("INSERT INTO " +
+                    PROGRESS_TABLE + " (table_name, source_table_name, copy_sql, last_rowid) " +
+                    "VALUES (?, ?, ?, ?)");
+            try {
+                for (String[] row : rows) {
+                    index.bindString(1, row[0]);
+                    index.bindString(2, "DROP TABLE " + row[1]);
+                    index.executeInsert();
+
+                    progress.bindString(1, row[0]);
+                    progress.bindString(2, row[1]);
+                    progress.bindString(3, row[2]);
+                    progress.bindLong(4, Long.parseLong(row[3]));
+                    progress.executeInsert();
+                }
+            } finally {
+                index.close();
+                progress.close();
+            }
+        });
+    }
+
+    private void copy(String tableName) {
+        String sourceTableName = null;
+        String copySql = null;
+        long lastRowId = 0;
+        try (RowCursor c = mExecutor.query("SELECT source_table_name, copy_sql, last_rowid " +
+                "FROM " + PROGRESS_TABLE + " WHERE table_name = ?", tableName)) {
+            if (c.moveToNext()) {
+                sourceTableName = c.getString(0);
+                copySql = c.getString(1);
+                lastRowId = c.getLong(2);
+            }
+        }
+
+        if (sourceTableName == null) {
+            return;
+        }
+
+        final SqlStatement copy =
+                mExecutor.compileStatement(copySql + " WHERE rowid > ? AND rowid <= ?");
+        final SqlStatement progress = mExecutor.compileStatement("UPDATE " + PROGRESS_TABLE +
+                " SET last_rowid = ? WHERE table_name = ?");
+        try {
+            while (true) {
+                final long from = lastRowId;
+                final long to = findChunkEnd(sourceTableName, from);
+                if (to == from) {
+                    break;
+                }
+
+                inTransaction(() -> {
+                    copy.bindLong(1, from);
+                    copy.bindLong(2, to);
+                    final Metrics metrics = Metrics.installed();
+                    if (metrics == Metrics.NONE) {
+                        copy.execute();
+                    } else {
+                        final long start = System.nanoTime();
+                        final int rows = copy.executeUpdateDelete();
+                        metrics.rowsCopied(tableName, rows, System.nanoTime() - start);
+                    }
+
+                    progress.bindLong(1, to);
+                    progress.bindString(2, tableName);
+                    progress.execute();
+                });
+                lastRowId = to;
+            }
+        } finally {
+            copy.close();
+            progress.close();
+        }
+
+        final List<String> finishSql = new ArrayList<>();
+        try (RowCursor c = mExecutor.query("SELECT sql FROM " + INDEX_TABLE +
+                " WHERE table_name = ? ORDER BY rowid", tableName)) {
+            while (c.moveToNext()) {
+                finishSql.add(c.getString(0));
+            }
+        }
+
+        inTransaction(() -> {
+            for (String sql : finishSql) {
+                mExecutor.execSQL(sql);
+            }
+
+            for (String table : new String[]{PROGRESS_TABLE, INDEX_TABLE}) {
+                final SqlStatement statement = mExecutor.compileStatement("DELETE FROM " +
+                        table + " WHERE table_name = ?");
+                try {
+                    statement.bindString(1, tableName);
+                    statement.execute();
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the rowid of the last row in the next chunk after {@code lastRowId}, or
+     * {@code lastRowId} when no row is left.
+     */
+    private long findChunkEnd(String sourceTableName, long lastRowId) {
+        try (RowCursor c = mExecutor.query("SELECT max(rowid) FROM (SELECT rowid FROM " +
+                sourceTableName + " WHERE rowid > " + lastRowId + " ORDER BY rowid LIMIT " +
+                mChunkSize + ")")) {
+            return c.moveToNext() && !c.isNull(0) ? c.getLong(0) : lastRowId;
+        }
+    }
+
+    private boolean exists(String tableName) {
+        try (RowCursor c = mExecutor.query("SELECT 1 FROM sqlite_master " +
+                "WHERE type = 'table' AND name = ?", tableName)) {
+            return c.moveToNext();
+        }
+    }
+
+    private void inTransaction(Runnable runnable) {
+        mExecutor.beginTransaction();
+        try {
+            runnable.run();
+            mExecutor.setTransactionSuccessful();
+        } finally {
+            mExecutor.endTransaction();
+        }
+    }
+
+    private static String createIndexTableSql() {
+        return "CREATE TABLE IF NOT EXISTS " + INDEX_TABLE + "(" +
+                "table_name TEXT NOT NULL, " +
+                "sql TEXT NOT NULL)";
+    }
+
+    private static String createProgressTableSql() {
+        return "CREATE TABLE IF NOT EXISTS " + PROGRESS_TABLE + "(" +
+                "table_name TEXT PRIMARY KEY NOT NULL, " +
+                "source_table_name TEXT NOT NULL, " +
+                "copy_sql TEXT NOT NULL, " +
+                "last_rowid INTEGER NOT NULL)";
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.Arrays;
+
+/**
+ * Reusable page of rows stored column by column, filled by {@link RowReader#read(ColumnPage)}.
+ * <p>
+ * Values are kept by {@link Affinity}: INTEGER columns in a {@code long[]}, REAL columns in a
+ * {@code double[]}, TEXT columns as {@link String}s and BLOB columns as {@code byte[]}. NUMERIC
+ * columns, e.g. DATE or BOOLEAN, routinely hold REAL or TEXT values as well, so each of their
+ * values is kept as the {@link Long}, {@link Double}, {@link String} or {@code byte[]} of its
+ * storage class. Arrays are allocated once, so paging through a large table allocates only the
+ * TEXT, BLOB and NUMERIC values themselves.
+ * <p>
+ * Outside STRICT tables an INTEGER or REAL column may still hold a value of another storage
+ * class, e.g. TEXT or a fractional REAL in an INTEGER column. Such a value is not coerced: it
+ * is kept as is, read by {@link #getValue(int, int)}, and its column is {@link #isMixed(int)}.
+ */
+public class ColumnPage {
+    static final byte KIND_LONG = 0;
+    static final byte KIND_DOUBLE = 1;
+    static final byte KIND_TEXT = 2;
+    static final byte KIND_BLOB = 3;
+    static final byte KIND_VALUE = 4;
+
+    private final Table.Column[] mColumns;
+    private final int mCapacity;
+    private final byte[] mKinds;
+    private final boolean[][] mNulls;
+    private final long[][] mLongs;
+    private final double[][] mDoubles;
+    private final Object[][] mObjects;
+    private final boolean[] mMixed;
+    private int mSize;
+
+    /**
+     * Holds every column of {@code table}, as read by {@link RowReader#RowReader(RowCursor,
+     * Table)}.
+     */
+    public ColumnPage(int capacity, Table table) {
+        this(capacity, table.getStatements().getColumns());
+    }
+
+    /**
+     * @param columns the columns of the {@link RowReader}s that will fill this page, in the
+     *                same order.
+     */
+    public ColumnPage(int capacity, Table.Column... columns) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+
+        mColumns = columns.clone();
+        mCapacity = capacity;
+        mKinds = new byte[mColumns.length];
+        mNulls = new boolean[mColumns.length][capacity];
+        mLongs = new long[mColumns.length][];
+        mDoubles = new double[mColumns.length][];
+        mObjects = new Object[mColumns.length][];
+        mMixed = new boolean[mColumns.length];
+        for (int i = 0; i < mColumns.length; i++) {
+            switch (mColumns[i].getAffinity()) {
+                case INTEGER:
+                    mKinds[i] = KIND_LONG;
+                    mLongs[i] = new long[capacity];
+                    break;
+                case NUMERIC:
+                    mKinds[i] = KIND_VALUE;
+                    mObjects[i] = new Object[capacity];
+                    break;
+                case REAL:
+                    mKinds[i] = KIND_DOUBLE;
+                    mDoubles[i] = new double[capacity];
+                    break;
+                case TEXT:
+                    mKinds[i] = KIND_TEXT;
+                    mObjects[i] = new String[capacity];
+                    break;
+                default:
+                    mKinds[i] = KIND_BLOB;
+                    mObjects[i] = new byte[capacity][];
+                    break;
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return the number of rows of the last {@link RowReader#read(ColumnPage)}.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isNull(int position, int row) {
+        return mNulls[position][checkRow(row)];
+    }
+
+    /**
+     * @throws IllegalStateException if the value is not an INTEGER, see {@link #isMixed(int)}.
+     */
+    public long getLong(int position, int row) {
+        return getLongs(position)[checkExact(position, row)];
+    }
+
+    /**
+     * @throws IllegalStateException if the value is not a REAL, see {@link #isMixed(int)}.
+     */
+    public double getDouble(int position, int row) {
+        return getDoubles(position)[checkExact(position, row)];
+    }
+
+    public String getString(int position, int row) {
+        return getStrings(position)[checkRow(row)];
+    }
+
+    public byte[] getBlob(int position, int row) {
+        return getBlobs(position)[checkRow(row)];
+    }
+
+    /**
+     * @return the value as its storage class: a {@link Long}, {@link Double}, {@link String},
+     * {@code byte[]} or null. for NUMERIC columns and the values of {@link #isMixed(int)}
+     * columns that do not fit their array.
+     */
+    public Object getValue(int position, int row) {
+        checkRow(row);
+        if (mKinds[position] == KIND_VALUE) {
+            return mObjects[position][row];
+        }
+        if (mMixed[position] && mObjects[position][row] != null) {
+            return mObjects[position][row];
+        }
+        if (mNulls[position][row]) {
+            return null;
+        }
+
+        switch (mKinds[position]) {
+            case KIND_LONG:
+                return mLongs[position][row];
+            case KIND_DOUBLE:
+                return mDoubles[position][row];
+            default:
+                return mObjects[position][row];
+        }
+    }
+
+    /**
+     * @return true if some value of the INTEGER or REAL column at {@code position} in this page
+     * is of another storage class. {@link #getLongs(int)} and {@link #getDoubles(int)} read
+     * those values as 0; check this once per page before using them.
+     */
+    public boolean isMixed(int position) {
+        return mMixed[position];
+    }
+
+    /**
+     * @return the backing array of an INTEGER column, valid up to {@link #size()}. NULLs and
+     * the values of other storage classes read as 0.
+     */
+    public long[] getLongs(int position) {
+        final long[] longs = mLongs[position];
+        if (longs == null) {
+            throw new IllegalStateException("not an INTEGER column: " +
+                    mColumns[position].name);
+        }
+
+        return longs;
+    }
+
+    /**
+     * @return the backing array of a REAL column, valid up to {@link #size()}. NULLs and the
+     * values of other storage classes read as 0.
+     */
+    public double[] getDoubles(int position) {
+        final double[] doubles = mDoubles[position];
+        if (doubles == null) {
+            throw new IllegalStateException("not a REAL column: " + mColumns[position].name);
+        }
+
+        return doubles;
+    }
+
+    public String[] getStrings(int position) {
+        if (mKinds[position] != KIND_TEXT) {
+            throw new IllegalStateException("not a TEXT column: " + mColumns[position].name);
+        }
+
+        return (String[]) mObjects[position];
+    }
+
+    public byte[][] getBlobs(int position) {
+        if (mKinds[position] != KIND_BLOB) {
+            throw new IllegalStateException("not a BLOB column: " + mColumns[position].name);
+        }
+
+        return (byte[][]) mObjects[position];
+    }
+
+    /**
+     * @return the backing array of a NUMERIC column, valid up to {@link #size()}.
+     * see {@link #getValue(int, int)}.
+     */
+    public Object[] getValues(int position) {
+        if (mKinds[position] != KIND_VALUE) {
+            throw new IllegalStateException("not a NUMERIC column: " + mColumns[position].name);
+        }
+
+        return mObjects[position];
+    }
+
+    byte getKind(int position) {
+        return mKinds[position];
+    }
+
+    void checkColumns(Table.Column[] columns) {
+        if (columns.length != mColumns.length) {
+            throw new IllegalArgumentException("column count mismatch: " + columns.length);
+        }
+
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] != mColumns[i]) {
+                throw new IllegalArgumentException("column mismatch: " + columns[i].name);
+            }
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < mColumns.length; i++) {
+            Arrays.fill(mNulls[i], 0, mSize, false);
+            if (mObjects[i] != null) {
+                // drop references so the previous page can be collected.
+                Arrays.fill(mObjects[i], 0, mSize, null);
+            }
+            mMixed[i] = false;
+        }
+        mSize = 0;
+    }
+
+    void setSize(int size) {
+        mSize = size;
+    }
+
+    void setNull(int position, int row) {
+        mNulls[position][row] = true;
+        if (mLongs[position] != null) {
+            mLongs[position][row] = 0;
+        } else if (mDoubles[position] != null) {
+            mDoubles[position][row] = 0;
+        }
+    }
+
+    void setLong(int position, int row, long value) {
+        mLongs[position][row] = value;
+    }
+
+    void setDouble(int position, int row, double value) {
+        mDoubles[position][row] = value;
+    }
+
+    void setObject(int position, int row, Object value) {
+        mObjects[position][row] = value;
+    }
+
+    /**
+     * Keeps {@code value}, of another storage class, in the INTEGER or REAL column at
+     * {@code position}.
+     */
+    void setMixed(int position, int row, Object value) {
+        if (mObjects[position] == null) {
+            mObjects[position] = new Object[mCapacity];
+        }
+        mObjects[position][row] = value;
+        mMixed[position] = true;
+        if (mLongs[position] != null) {
+            mLongs[position][row] = 0;
+        } else {
+            mDoubles[position][row] = 0;
+        }
+    }
+
+    private int checkExact(int position, int row) {
+        checkRow(row);
+        if (mMixed[position] && mObjects[position][row] != null) {
+            throw new IllegalStateException("not " +
+                    (mKinds[position] == KIND_LONG ? "an INTEGER" : "a REAL") + ": " +
+                    mColumns[position].name + " of row " + row);
+        }
+
+        return row;
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || mSize <= row) {
+            throw new IndexOutOfBoundsException("row: " + row + ", size: " + mSize);
+        }
+
+        return row;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+/**
+ * Opens and closes the connections of a {@link DatabaseAccess}, all to the same database.
+ */
+public interface ConnectionFactory {
+    /**
+     * Opens the read-write connection. Called once, on the writer thread.
+     */
+    SqlExecutor openWriter();
+
+    /**
+     * Opens a read-only connection. Called once the writer is initialized, on a reading
+     * thread.
+     */
+    SqlExecutor openReader();
+
+    void close(SqlExecutor connection);
+}
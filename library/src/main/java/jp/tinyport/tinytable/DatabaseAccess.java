@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * One writer and a bounded pool of readers over the connections of a
+ * {@link ConnectionFactory}.
+ * <p>
+ * The writer connection is confined to a single writer thread. It switches the database to
+ * WAL, so that readers do not block it, and runs the initializer, e.g. a
+ * {@link MigrationRunner} upgrade or an initial population, before any reader is released.
+ * {@link #ready()} completes once that is done. Reads then run on the calling thread, each on a
+ * read-only connection of their own, so they proceed in parallel up to the pool size.
+ */
+public class DatabaseAccess implements Closeable {
+    private final ConnectionFactory mFactory;
+    private final ExecutorService mWriter;
+    private final CompletableFuture<SqlExecutor> mWriterConnection;
+    private final CompletableFuture<Void> mReady;
+    private final Semaphore mReaderPermits;
+    private final ConcurrentLinkedQueue<SqlExecutor> mIdleReaders = new ConcurrentLinkedQueue<>();
+    private volatile boolean mClosed;
+
+    /**
+     * Starts opening and initializing the writer connection.
+     *
+     * @param readerCount maximum number of read-only connections.
+     * @param initializer run once on the writer connection, before reads are allowed.
+     */
+    public DatabaseAccess(ConnectionFactory factory, int readerCount,
+            Consumer<? super SqlExecutor> initializer) {
+        if (readerCount <= 0) {
+            throw new IllegalArgumentException("readerCount: " + readerCount);
+        }
+
+        mFactory = Objects.requireNonNull(factory);
+        Objects.requireNonNull(initializer);
+        mReaderPermits = new Semaphore(readerCount);
+        mWriter = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "tinytable-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        mWriterConnection = CompletableFuture.supplyAsync(() -> {
+            final SqlExecutor writer = factory.openWriter();
+            try {
+                try (RowCursor c = writer.query("PRAGMA journal_mode = WAL")) {
+                    c.moveToNext();
+                }
+                initializer.accept(writer);
+            } catch (RuntimeException | Error e) {
+                factory.close(writer);
+                throw e;
+            }
+
+            return writer;
+        }, mWriter);
+        mReady = mWriterConnection.thenApply(writer -> null);
+    }
+
+    /**
+     * @return a future completed once the initializer has run, or completed exceptionally with
+     * its failure. Its non-async dependents run on the writer thread.
+     */
+    public CompletableFuture<Void> ready() {
+        return mReady.thenApply(v -> v);
+    }
+
+    public boolean isReady() {
+        return mReady.isDone() && !mReady.isCompletedExceptionally();
+    }
+
+    /**
+     * Runs {@code work} on the writer thread, after the initializer and every write submitted
+     * before it.
+     */
+    public <R> CompletableFuture<R> write(Function<? super SqlExecutor, ? extends R> work) {
+        Objects.requireNonNull(work);
+        checkOpen();
+
+        // queued on the writer directly: dependents of a pending future run in reverse order.
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        mWriter.execute(() -> {
+            try {
+                result.complete(work.apply(mWriterConnection.join()));
+            } catch (RuntimeException | Error e) {
+                result.completeExceptionally(e);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Runs {@code work} on the calling thread with a read-only connection. Blocks until the
+     * access is ready and a connection is free.
+     *
+     * @throws java.util.concurrent.CompletionException if the initializer failed.
+     */
+    public <R> R read(Function<? super SqlExecutor, ? extends R> work) {
+        Objects.requireNonNull(work);
+        checkOpen();
+        mReady.join();
+
+        mReaderPermits.acquireUninterruptibly();
+        SqlExecutor reader = null;
+        try {
+            checkOpen();
+            reader = mIdleReaders.poll();
+            if (reader == null) {
+                reader = openReader();
+            }
+
+            return work.apply(reader);
+        } finally {
+            if (reader != null) {
+                mIdleReaders.offer(reader);
+                if (mClosed) {
+                    closeIdleReaders();
+                }
+            }
+            mReaderPermits.release();
+        }
+    }
+
+    /**
+     * Same as {@link #read(Function)} on {@code executor}, once the access is ready.
+     */
+    public <R> CompletableFuture<R> readAsync(Function<? super SqlExecutor, ? extends R> work,
+            Executor executor) {
+        Objects.requireNonNull(work);
+        return mReady.thenApplyAsync(v -> read(work), executor);
+    }
+
+    /**
+     * Closes the idle readers, and the writer once the writes submitted before are done.
+     * Readers in use are closed when their read returns.
+     */
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+
+        mWriter.execute(() -> {
+            if (!mWriterConnection.isCompletedExceptionally()) {
+                mFactory.close(mWriterConnection.join());
+            }
+        });
+        mWriter.shutdown();
+        closeIdleReaders();
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (mWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private SqlExecutor openReader() {
+        final SqlExecutor reader = mFactory.openReader();
+        try {
+            reader.execSQL("PRAGMA query_only = ON");
+        } catch (RuntimeException | Error e) {
+            mFactory.close(reader);
+            throw e;
+        }
+
+        return reader;
+    }
+
+    private void closeIdleReaders() {
+        SqlExecutor reader;
+        while ((reader = mIdleReaders.poll()) != null) {
+            mFactory.close(reader);
+        }
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("closed");
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory {@link Metrics}: one {@link Histogram} per event and table or step, named
+ * {@code ddl/<table>}, {@code migrate/<table>}, {@code step/<version>} and
+ * {@code copy/<table>}. {@link #dump(Appendable)} writes one line per histogram.
+ */
+public class HistogramMetrics extends Metrics {
+    public static final String DDL = "ddl/";
+    public static final String MIGRATE = "migrate/";
+    public static final String STEP = "step/";
+    public static final String COPY = "copy/";
+
+    private final ConcurrentHashMap<String, Histogram> mHistograms = new ConcurrentHashMap<>();
+
+    @Override
+    public void ddlRendered(String tableName, int length, long nanos) {
+        histogram(DDL + tableName).record(nanos, length);
+    }
+
+    @Override
+    public void tableMigrated(String tableName, long nanos) {
+        histogram(MIGRATE + tableName).record(nanos, 0);
+    }
+
+    @Override
+    public void stepRun(int version, long nanos) {
+        histogram(STEP + version).record(nanos, 0);
+    }
+
+    @Override
+    public void rowsCopied(String tableName, long rows, long nanos) {
+        histogram(COPY + tableName).record(nanos, rows);
+    }
+
+    /**
+     * @return null if nothing was recorded under {@code name}.
+     */
+    public Histogram getHistogram(String name) {
+        return mHistograms.get(name);
+    }
+
+    /**
+     * @return the histograms sorted by name.
+     */
+    public Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(new TreeMap<>(mHistograms));
+    }
+
+    public void reset() {
+        mHistograms.clear();
+    }
+
+    public void dump(Appendable appendable) throws IOException {
+        for (Map.Entry<String, Histogram> entry : getHistograms().entrySet()) {
+            appendable.append(entry.getKey()).append(' ')
+                    .append(entry.getValue().toString()).append('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        try {
+            dump(builder);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+
+        return builder.toString();
+    }
+
+    private Histogram histogram(String name) {
+        return mHistograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Durations in power-of-two nanosecond buckets, with the summed amount (DDL characters or
+     * rows copied) of the recorded events.
+     */
+    public static final class Histogram {
+        private final long[] mBuckets = new long[64];
+        private long mCount;
+        private long mTotalNanos;
+        private long mMinNanos = Long.MAX_VALUE;
+        private long mMaxNanos;
+        private long mAmount;
+
+        synchronized void record(long nanos, long amount) {
+            final long value = Math.max(0, nanos);
+            mBuckets[63 - Long.numberOfLeadingZeros(value | 1)]++;
+            mCount++;
+            mTotalNanos += value;
+            mMinNanos = Math.min(mMinNanos, value);
+            mMaxNanos = Math.max(mMaxNanos, value);
+            mAmount += amount;
+        }
+
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        public synchronized long getTotalNanos() {
+            return mTotalNanos;
+        }
+
+        public synchronized long getMinNanos() {
+            return mCount == 0 ? 0 : mMinNanos;
+        }
+
+        public synchronized long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        public synchronized long getAmount() {
+            return mAmount;
+        }
+
+        /**
+         * @param percentile in {@code [0, 100]}.
+         * @return upper bound of the bucket holding {@code percentile}, at most
+         * {@link #getMaxNanos()}.
+         */
+        public synchronized long getPercentileNanos(double percentile) {
+            if (percentile < 0 || 100 < percentile) {
+                throw new IllegalArgumentException("percentile: " + percentile);
+            }
+            if (mCount == 0) {
+                return 0;
+            }
+
+            final long rank = Math.max(1, (long) Math.ceil(mCount * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (rank <= seen) {
+                    final long upper = i == 62 ? Long.MAX_VALUE : (2L << i) - 1;
+                    return Math.min(upper, mMaxNanos);
+                }
+            }
+
+            return mMaxNanos;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.ROOT,
+                    "count=%d total=%dns min=%dns p50=%dns p99=%dns max=%dns amount=%d",
+                    mCount, mTotalNanos, getMinNanos(), getPercentileNanos(50),
+                    getPercentileNanos(99), mMaxNanos, mAmount);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.Objects;
+
+/**
+ * Receives timings of schema and migration work. Every method does nothing by default;
+ * override the ones of interest and {@link #install(Metrics)} the instance.
+ * <p>
+ * While {@link #NONE} is installed the library skips even the {@link System#nanoTime()}
+ * calls. Methods may be called from any thread.
+ */
+public abstract class Metrics {
+    public static final Metrics NONE = new Metrics() {
+    };
+
+    private static volatile Metrics sInstalled = NONE;
+
+    public static void install(Metrics metrics) {
+        sInstalled = Objects.requireNonNull(metrics);
+    }
+
+    public static Metrics installed() {
+        return sInstalled;
+    }
+
+    /**
+     * @param length characters of DDL, equal to its bytes for ASCII identifiers.
+     */
+    public void ddlRendered(String tableName, int length, long nanos) {
+    }
+
+    /**
+     * A table was diffed against the live schema and migrated. For the tables of a
+     * {@link SchemaSet}, diffed in parallel beforehand, only the migration SQL is timed.
+     */
+    public void tableMigrated(String tableName, long nanos) {
+    }
+
+    /**
+     * The operations planned by the {@link MigrationStep} of {@code version} were run.
+     */
+    public void stepRun(int version, long nanos) {
+    }
+
+    public void rowsCopied(String tableName, long rows, long nanos) {
+    }
+
+    /**
+     * @return {@link System#nanoTime()}, or 0 for {@link #NONE}.
+     */
+    static long nanoTime(Metrics metrics) {
+        return metrics == NONE ? 0 : System.nanoTime();
+    }
+}
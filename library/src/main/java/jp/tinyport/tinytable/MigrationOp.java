@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A {@link MigrationStep} that declares its effect, so that {@link MigrationRunner} can compact
+ * a version range before running it.
+ */
+public final class MigrationOp implements MigrationStep {
+    enum Kind {
+        ADD_COLUMN, DROP_COLUMN, REBUILD, UPDATE, OPAQUE
+    }
+
+    final Kind kind;
+
+    /**
+     * Lower-cased table name, or null for {@link Kind#OPAQUE}.
+     */
+    final String tableKey;
+
+    /**
+     * Lower-cased column name of {@link Kind#ADD_COLUMN} and {@link Kind#DROP_COLUMN}, or null.
+     */
+    final String columnKey;
+
+    /**
+     * Lower-cased names of the only columns an {@link Kind#UPDATE} writes, or empty if unknown.
+     * see {@link #writing(String, String...)}.
+     */
+    final Set<String> writtenColumnKeys;
+
+    private final String mTableName;
+    private final Object mTarget;
+    private final Object[] mBindArgs;
+
+    private MigrationOp(Kind kind, String tableName, String columnName, Object target,
+            Object[] bindArgs) {
+        this(kind, tableName, columnName, target, bindArgs, Collections.emptySet());
+    }
+
+    private MigrationOp(Kind kind, String tableName, String columnName, Object target,
+            Object[] bindArgs, Set<String> writtenColumnKeys) {
+        this.kind = kind;
+        tableKey = tableName == null ? null : tableName.toLowerCase(Locale.ROOT);
+        columnKey = columnName == null ? null : columnName.toLowerCase(Locale.ROOT);
+        this.writtenColumnKeys = writtenColumnKeys;
+        mTableName = tableName;
+        mTarget = target;
+        mBindArgs = bindArgs;
+    }
+
+    public static MigrationOp addColumn(String tableName, Table.Column column) {
+        Objects.requireNonNull(tableName);
+        Objects.requireNonNull(column);
+        if (column.isConstraint()) {
+            throw new IllegalArgumentException("not a column: " + column.name);
+        }
+
+        return new MigrationOp(Kind.ADD_COLUMN, tableName, column.name, column, null);
+    }
+
+    /**
+     * see {@link MigrationPlan.Builder#dropColumn(String, String)}.
+     */
+    public static MigrationOp dropColumn(String tableName, String columnName) {
+        Objects.requireNonNull(tableName);
+        Objects.requireNonNull(columnName);
+        return new MigrationOp(Kind.DROP_COLUMN, tableName, columnName, columnName, null);
+    }
+
+    /**
+     * Migrates the table to {@code table}. see {@link MigrationPlan.Builder#migrate(Table)}.
+     */
+    public static MigrationOp rebuild(Table table) {
+        Objects.requireNonNull(table);
+        return new MigrationOp(Kind.REBUILD, table.tableName, null, table, null);
+    }
+
+    /**
+     * Statement that reads or writes rows of {@code tableName} only, in the schema of its
+     * version. see {@link MigrationPlan.Builder#execSQL(String, Object...)}.
+     */
+    public static MigrationOp update(String tableName, String sql, Object... bindArgs) {
+        Objects.requireNonNull(tableName);
+        Objects.requireNonNull(sql);
+        return new MigrationOp(Kind.UPDATE, tableName, null, sql,
+                Objects.requireNonNull(bindArgs).clone());
+    }
+
+    /**
+     * @return this {@link #update} declaring that it writes {@code columnName} and
+     * {@code rest} only. a downgrade to a schema without them drops the written values, so
+     * it needs no downgrade step for this update.
+     * @throws IllegalStateException if this is not an update.
+     */
+    public MigrationOp writing(String columnName, String... rest) {
+        if (kind != Kind.UPDATE) {
+            throw new IllegalStateException("not an update: " + this);
+        }
+
+        final Set<String> keys = new HashSet<>(writtenColumnKeys);
+        keys.add(columnName.toLowerCase(Locale.ROOT));
+        for (String name : rest) {
+            keys.add(name.toLowerCase(Locale.ROOT));
+        }
+
+        return new MigrationOp(kind, mTableName, null, mTarget, mBindArgs,
+                Collections.unmodifiableSet(keys));
+    }
+
+    /**
+     * Step with unknown effects. Nothing is compacted across it.
+     */
+    public static MigrationOp of(MigrationStep step) {
+        Objects.requireNonNull(step);
+        if (step instanceof MigrationOp) {
+            return (MigrationOp) step;
+        }
+
+        return new MigrationOp(Kind.OPAQUE, null, null, step, null);
+    }
+
+    /**
+     * @return the target of {@link Kind#REBUILD}.
+     */
+    Table getTable() {
+        return (Table) mTarget;
+    }
+
+    @Override
+    public void plan(MigrationPlan.Builder plan) {
+        switch (kind) {
+            case ADD_COLUMN:
+                plan.addColumn(mTableName, (Table.Column) mTarget);
+                break;
+            case DROP_COLUMN:
+                plan.dropColumn(mTableName, (String) mTarget);
+                break;
+            case REBUILD:
+                plan.migrate((Table) mTarget);
+                break;
+            case UPDATE:
+                plan.execSQL((String) mTarget, mBindArgs);
+                break;
+            case OPAQUE:
+                ((MigrationStep) mTarget).plan(plan);
+                break;
+            default:
+                throw new AssertionError(kind);
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case ADD_COLUMN:
+                return "addColumn(" + mTableName + ", " + ((Table.Column) mTarget).name + ")";
+            case DROP_COLUMN:
+                return "dropColumn(" + mTableName + ", " + mTarget + ")";
+            case REBUILD:
+                return "rebuild(" + mTableName + ")";
+            case UPDATE:
+                return "update(" + mTableName + ", " + mTarget + ", " +
+                        Arrays.toString(mBindArgs) + ")";
+            default:
+                return "of(" + mTarget + ")";
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Ordered SQL of a migration, run in a single transaction.
+ * <p>
+ * Parameterized statements are compiled once per plan run and reused for every operation
+ * with the same SQL.
+ */
+public final class MigrationPlan {
+    private final List<Operation> mOperations;
+
+    private MigrationPlan(List<Operation> operations) {
+        mOperations = Collections.unmodifiableList(operations);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isEmpty() {
+        return mOperations.isEmpty();
+    }
+
+    public int size() {
+        return mOperations.size();
+    }
+
+    public void run(SqlExecutor executor) {
+        Objects.requireNonNull(executor);
+        if (mOperations.isEmpty()) {
+            return;
+        }
+
+        executor.beginTransaction();
+        try (StatementCache statements = new StatementCache(executor)) {
+            for (Operation operation : mOperations) {
+                operation.run(executor, statements);
+            }
+            executor.setTransactionSuccessful();
+        } finally {
+            executor.endTransaction();
+        }
+    }
+
+    /**
+     * Runs migration SQL, reporting the rows of each {@code INSERT ... SELECT} copy to the
+     * installed {@link Metrics}.
+     */
+    private static void execMigrationSql(SqlExecutor executor, String tableName,
+            List<String> sqls) {
+        final Metrics metrics = Metrics.installed();
+        for (String sql : sqls) {
+            if (metrics == Metrics.NONE || !SchemaDiff.isCopySql(sql)) {
+                executor.execSQL(sql);
+                continue;
+            }
+
+            final long start = System.nanoTime();
+            executor.execSQL(sql);
+            final long nanos = System.nanoTime() - start;
+            try (RowCursor c = executor.query("SELECT changes()")) {
+                metrics.rowsCopied(tableName, c.moveToNext() ? c.getLong(0) : 0, nanos);
+            }
+        }
+    }
+
+    interface Operation {
+        void run(SqlExecutor executor, StatementCache statements);
+    }
+
+    public static final class Builder {
+        private final List<Operation> mOperations = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder execSQL(String sql) {
+            Objects.requireNonNull(sql);
+            mOperations.add((executor, statements) -> executor.execSQL(sql));
+            return this;
+        }
+
+        /**
+         * @param bindArgs {@link Long}, {@link Double}, {@link String}, {@code byte[]},
+         *                 other {@link Number}s, {@link Boolean} or null.
+         */
+        public Builder execSQL(String sql, Object... bindArgs) {
+            Objects.requireNonNull(sql);
+            final Object[] args = Objects.requireNonNull(bindArgs).clone();
+            if (args.length == 0) {
+                return execSQL(sql);
+            }
+
+            mOperations.add((executor, statements) -> {
+                final SqlStatement statement = statements.get(sql);
+                StatementCache.bind(statement, args);
+                statement.execute();
+            });
+            return this;
+        }
+
+        /**
+         * Diffs the live schema against {@code table} when the plan runs, after every
+         * preceding operation, and applies the cheapest {@link SchemaDiff} migration. A
+         * rebuild builds unique and secondary indexes after copying the rows.
+         */
+        public Builder migrate(Table table) {
+            Objects.requireNonNull(table);
+            mOperations.add((executor, statements) -> {
+                final Metrics metrics = Metrics.installed();
+                final long start = Metrics.nanoTime(metrics);
+                final TableInfo info = TableInfo.read(executor, table.tableName);
+                if (info == null) {
+                    execMigrationSql(executor, table.tableName, table.createSchemaSql());
+                } else {
+                    execMigrationSql(executor, table.tableName,
+                            SchemaDiff.compare(info.toTable(), table)
+                                    .createDeferredMigrationSql());
+                }
+
+                if (metrics != Metrics.NONE) {
+                    metrics.tableMigrated(table.tableName, System.nanoTime() - start);
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Same as {@link #migrate(Table)} for every table of {@code schema}, in dependency
+         * order, with the diffs prepared in parallel. see
+         * {@link SchemaSet#createMigrationSql(RowSource)}.
+         */
+        public Builder migrate(SchemaSet schema) {
+            Objects.requireNonNull(schema);
+            mOperations.add((executor, statements) -> {
+                final List<Table> tables = schema.getTables();
+                final List<List<String>> sql = schema.prepareMigrationSql(executor,
+                        ForkJoinPool.commonPool());
+                final Metrics metrics = Metrics.installed();
+                for (int i = 0; i < tables.size(); i++) {
+                    final String tableName = tables.get(i).tableName;
+                    final long start = Metrics.nanoTime(metrics);
+                    execMigrationSql(executor, tableName, sql.get(i));
+                    if (metrics != Metrics.NONE) {
+                        metrics.tableMigrated(tableName, System.nanoTime() - start);
+                    }
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Creates {@code table} with {@link Table#createBareSql()}, runs {@code loader} and
+         * builds the UNIQUE constraints and secondary indexes once every row is in.
+         */
+        public Builder populate(Table table, Consumer<SqlExecutor> loader) {
+            Objects.requireNonNull(table);
+            Objects.requireNonNull(loader);
+            mOperations.add((executor, statements) -> {
+                executor.execSQL(table.createBareSql());
+                loader.accept(executor);
+                for (String sql : table.createDeferredIndexSql()) {
+                    executor.execSQL(sql);
+                }
+            });
+            return this;
+        }
+
+        public Builder addColumn(String tableName, Table.Column column) {
+            return execSQL(column.createAddSql(tableName));
+        }
+
+        /**
+         * Rebuilds {@code tableName} without {@code columnName} when the plan runs, from its
+         * live schema read by {@link TableInfo}: keys, foreign keys, AUTOINCREMENT and the
+         * other secondary indexes are kept. UNIQUE constraints, foreign keys and indexes over
+         * the column are dropped with it, and so are the {@link Table.FullText} companions,
+         * left to a later {@link #migrate(Table)}. CHECK constraints and COLLATE clauses are
+         * not reported by the pragmas and are lost.
+         *
+         * @throws IllegalStateException if the table does not exist when the plan runs.
+         */
+        public Builder dropColumn(String tableName, String columnName) {
+            Objects.requireNonNull(tableName);
+            Objects.requireNonNull(columnName);
+            mOperations.add((executor, statements) -> {
+                final Metrics metrics = Metrics.installed();
+                final long start = Metrics.nanoTime(metrics);
+                final TableInfo info = TableInfo.read(executor, tableName);
+                if (info == null) {
+                    throw new IllegalStateException("no such table: " + tableName);
+                }
+
+                execMigrationSql(executor, tableName, SchemaDiff.compare(info.toTable(),
+                        info.toTableWithout(columnName)).createDeferredMigrationSql());
+
+                if (metrics != Metrics.NONE) {
+                    metrics.tableMigrated(tableName, System.nanoTime() - start);
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Appends the operations planned by {@code step}, timed as one
+         * {@link Metrics#stepRun(int, long)}.
+         */
+        Builder step(int version, MigrationStep step) {
+            final Builder stepPlan = new Builder();
+            step.plan(stepPlan);
+            final List<Operation> operations = stepPlan.mOperations;
+            mOperations.add((executor, statements) -> {
+                final Metrics metrics = Metrics.installed();
+                final long start = Metrics.nanoTime(metrics);
+                for (Operation operation : operations) {
+                    operation.run(executor, statements);
+                }
+
+                if (metrics != Metrics.NONE) {
+                    metrics.stepRun(version, System.nanoTime() - start);
+                }
+            });
+            return this;
+        }
+
+        public Builder append(MigrationPlan plan) {
+            mOperations.addAll(plan.mOperations);
+            return this;
+        }
+
+        public MigrationPlan build() {
+            return new MigrationPlan(new ArrayList<>(mOperations));
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Versioned {@link MigrationStep}s, planned into one {@link MigrationPlan} per upgrade.
+ * <p>
+ * Steps made of {@link MigrationOp}s are compacted before they are planned: a column added and
+ * dropped again is never added, and schema changes that a later rebuild or the final schema
+ * diff would undo are skipped. {@link MigrationOp#update} and opaque steps see the schema of
+ * their own version.
+ * <p>
+ * A downgrade runs the downgrade steps of the versions it leaves, newest first, and then diffs
+ * the live schema back to the target tables, keeping the columns both have. Schema changes
+ * made of {@link MigrationOp}s are reverted by the diff alone. A diff cannot revert rows, so a
+ * version with a step of unknown effects or an {@link MigrationOp#update} needs a downgrade
+ * step, unless the update only writes columns the target lacks, see
+ * {@link MigrationOp#writing(String, String...)}. Tables the target does not know about are
+ * left in place.
+ */
+public class MigrationRunner {
+    private final TreeMap<Integer, List<MigrationOp>> mSteps = new TreeMap<>();
+    private final TreeMap<Integer, MigrationStep> mDowngradeSteps = new TreeMap<>();
+
+    public void addStep(int version, MigrationStep step) {
+        mSteps.put(version, Collections.singletonList(MigrationOp.of(step)));
+    }
+
+    public void addStep(int version, MigrationOp op, MigrationOp... rest) {
+        final List<MigrationOp> ops = new ArrayList<>(rest.length + 1);
+        ops.add(Objects.requireNonNull(op));
+        for (MigrationOp o : rest) {
+            ops.add(Objects.requireNonNull(o));
+        }
+        mSteps.put(version, Collections.unmodifiableList(ops));
+    }
+
+    /**
+     * Registers the step that undoes {@code version} when downgrading below it.
+     */
+    public void addDowngradeStep(int version, MigrationStep step) {
+        mDowngradeSteps.put(version, Objects.requireNonNull(step));
+    }
+
+    /**
+     * @return the steps in {@code (oldVersion, newVersion]}, or the downgrade steps in
+     * {@code (newVersion, oldVersion]} when downgrading, followed by a schema diff of every
+     * table in {@code tables}, in {@link SchemaSet} order.
+     * @throws IllegalStateException if a version left by a downgrade has a step of unknown
+     *                               effects or an update the diff cannot revert, and no
+     *                               downgrade step.
+     */
+    public MigrationPlan createPlan(int oldVersion, int newVersion, Table... tables) {
+        return createPlan(oldVersion, newVersion, new SchemaSet(tables));
+    }
+
+    public MigrationPlan createPlan(int oldVersion, int newVersion, SchemaSet schema) {
+        if (newVersion < oldVersion) {
+            return createDowngradePlan(oldVersion, newVersion, schema);
+        }
+
+        final MigrationPlan.Builder plan = MigrationPlan.builder();
+        for (Map.Entry<Integer, List<MigrationOp>> entry :
+                compact(oldVersion, newVersion, schema).entrySet()) {
+            final List<MigrationOp> ops = entry.getValue();
+            plan.step(entry.getKey(), builder -> {
+                for (MigrationOp op : ops) {
+                    op.plan(builder);
+                }
+            });
+        }
+
+        return plan.migrate(schema).build();
+    }
+
+    public void upgrade(SqlExecutor executor, int oldVersion, int newVersion, Table... tables) {
+        createPlan(oldVersion, newVersion, tables).run(executor);
+    }
+
+    public void upgrade(SqlExecutor executor, int oldVersion, int newVersion, SchemaSet schema) {
+        createPlan(oldVersion, newVersion, schema).run(executor);
+    }
+
+    public void downgrade(SqlExecutor executor, int oldVersion, int newVersion,
+            Table... tables) {
+        createPlan(oldVersion, newVersion, tables).run(executor);
+    }
+
+    public void downgrade(SqlExecutor executor, int oldVersion, int newVersion,
+            SchemaSet schema) {
+        createPlan(oldVersion, newVersion, schema).run(executor);
+    }
+
+    private MigrationPlan createDowngradePlan(int oldVersion, int newVersion,
+            SchemaSet schema) {
+        for (Map.Entry<Integer, List<MigrationOp>> entry :
+                mSteps.subMap(newVersion, false, oldVersion, true).entrySet()) {
+            if (!mDowngradeSteps.containsKey(entry.getKey()) &&
+                    !isReversible(entry.getValue(), schema)) {
+                throw new IllegalStateException("no downgrade step for version " +
+                        entry.getKey());
+            }
+        }
+
+        final MigrationPlan.Builder plan = MigrationPlan.builder();
+        for (Map.Entry<Integer, MigrationStep> entry :
+                mDowngradeSteps.subMap(newVersion, false, oldVersion, true)
+                        .descendingMap().entrySet()) {
+            plan.step(entry.getKey(), entry.getValue());
+        }
+
+        return plan.migrate(schema).build();
+    }
+
+    private static boolean isReversible(List<MigrationOp> ops, SchemaSet schema) {
+        for (MigrationOp op : ops) {
+            if (op.kind == MigrationOp.Kind.OPAQUE ||
+                    (op.kind == MigrationOp.Kind.UPDATE && !isDroppedByDiff(op, schema))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if {@code update} only writes columns that {@code schema} drops from a
+     * table it keeps.
+     */
+    private static boolean isDroppedByDiff(MigrationOp update, SchemaSet schema) {
+        if (update.writtenColumnKeys.isEmpty()) {
+            return false;
+        }
+
+        for (Table table : schema.getTables()) {
+            if (table.tableName.toLowerCase(Locale.ROOT).equals(update.tableKey)) {
+                return Collections.disjoint(columnKeys(table), update.writtenColumnKeys);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the operations of {@code (oldVersion, newVersion]} that still matter when
+     * {@code schema} is diffed afterwards, by version. Versions left without operations are
+     * skipped.
+     */
+    TreeMap<Integer, List<MigrationOp>> compact(int oldVersion, int newVersion,
+            SchemaSet schema) {
+        final TreeMap<Integer, List<MigrationOp>> result = new TreeMap<>();
+        if (newVersion <= oldVersion) {
+            return result;
+        }
+
+        final List<MigrationOp> ops = new ArrayList<>();
+        final List<Integer> versions = new ArrayList<>();
+        for (Map.Entry<Integer, List<MigrationOp>> entry :
+                mSteps.subMap(oldVersion, false, newVersion, true).entrySet()) {
+            for (MigrationOp op : entry.getValue()) {
+                ops.add(op);
+                versions.add(entry.getKey());
+            }
+        }
+
+        final boolean[] removed = new boolean[ops.size()];
+        cancelAddedColumns(ops, removed);
+        removeCoveredChanges(ops, removed, schema);
+
+        for (int i = 0; i < ops.size(); i++) {
+            if (!removed[i]) {
+                result.computeIfAbsent(versions.get(i), v -> new ArrayList<>()).add(ops.get(i));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes every column added and dropped again with no statement on its table in between.
+     */
+    private static void cancelAddedColumns(List<MigrationOp> ops, boolean[] removed) {
+        final Map<String, Map<String, Integer>> added = new HashMap<>();
+        for (int i = 0; i < ops.size(); i++) {
+            final MigrationOp op = ops.get(i);
+            switch (op.kind) {
+                case ADD_COLUMN:
+                    added.computeIfAbsent(op.tableKey, k -> new HashMap<>())
+                            .put(op.columnKey, i);
+                    break;
+                case DROP_COLUMN: {
+                    final Map<String, Integer> columns = added.get(op.tableKey);
+                    final Integer index = columns == null ? null : columns.remove(op.columnKey);
+                    if (index != null) {
+                        removed[index] = true;
+                        removed[i] = true;
+                    }
+                    break;
+                }
+                case REBUILD:
+                case UPDATE:
+                    added.remove(op.tableKey);
+                    break;
+                default:
+                    added.clear();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Walks backwards, removing the schema changes of a table that the next rebuild of it, or
+     * the final diff against {@code schema}, makes anyway. A change that drops a column the
+     * next rebuild keeps is not covered, since it resets the column's values.
+     */
+    private static void removeCoveredChanges(List<MigrationOp> ops, boolean[] removed,
+            SchemaSet schema) {
+        // table to the columns of the next rebuild.
+        final Map<String, Set<String>> covers = new HashMap<>();
+        for (Table table : schema.getTables()) {
+            covers.put(table.tableName.toLowerCase(Locale.ROOT), columnKeys(table));
+        }
+
+        for (int i = ops.size() - 1; 0 <= i; i--) {
+            if (removed[i]) {
+                continue;
+            }
+
+            final MigrationOp op = ops.get(i);
+            final Set<String> cover = op.tableKey == null ? null : covers.get(op.tableKey);
+            switch (op.kind) {
+                case ADD_COLUMN:
+                    removed[i] = cover != null;
+                    break;
+                case DROP_COLUMN:
+                    removed[i] = cover != null && !cover.contains(op.columnKey);
+                    if (!removed[i]) {
+                        // the drop needs the column to exist.
+                        covers.remove(op.tableKey);
+                    }
+                    break;
+                case REBUILD: {
+                    final Set<String> columns = columnKeys(op.getTable());
+                    if (cover != null && columns.containsAll(cover)) {
+                        removed[i] = true;
+                    } else {
+                        covers.put(op.tableKey, columns);
+                    }
+                    break;
+                }
+                case UPDATE:
+                    covers.remove(op.tableKey);
+                    break;
+                default:
+                    covers.clear();
+                    break;
+            }
+        }
+    }
+
+    private static Set<String> columnKeys(Table table) {
+        final Set<String> keys = new HashSet<>();
+        for (Table.Column column : table.getColumns()) {
+            if (!column.isConstraint()) {
+                keys.add(column.name.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        return keys;
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rebuilds a table while it stays readable and writable.
+ * <p>
+ * {@link #start()} creates the new definition as a shadow table without its unique and
+ * secondary indexes, plus triggers that mirror every insert, update and delete of the live
+ * table's common columns into it by rowid. {@link #backfill()} then copies the rows that
+ * existed at start, one chunk per transaction, so it can run in the background between the
+ * app's own writes. {@link #buildIndexes()} indexes the shadow table, and {@link #swap()}
+ * replaces the live table with it in one short transaction that builds no index. Progress is
+ * kept in
+ * {@link #PROGRESS_TABLE}, so an interrupted migration resumes from {@link #start()}.
+ * <p>
+ * Both tables need a rowid. Deletes done by REPLACE conflict resolution only fire the delete
+ * trigger while {@code PRAGMA recursive_triggers} is on. {@link #swap()} drops the live table,
+ * so it refuses to run while {@code PRAGMA foreign_keys} is on. {@link Table.FullText}
+ * companions whose virtual table is unchanged keep their index; others are rebuilt by the swap.
+ */
+public class OnlineMigration {
+    public static final String PROGRESS_TABLE = "tinytable_online_progress";
+    public static final String SHADOW_TABLE_PREFIX = "tinytable_shadow_";
+    /**
+     * Prefix of the copies {@link #buildIndexes()} makes of live indexes whose name the shadow
+     * table needs. They are dropped with the live table.
+     */
+    public static final String LIVE_INDEX_PREFIX = "tinytable_live_";
+
+    private final SqlExecutor mExecutor;
+    private final Table mTable;
+    private final int mChunkSize;
+    private final String mShadowTableName;
+
+    public OnlineMigration(SqlExecutor executor, Table table, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+
+        mExecutor = Objects.requireNonNull(executor);
+        mTable = Objects.requireNonNull(table);
+        mChunkSize = chunkSize;
+        mShadowTableName = SHADOW_TABLE_PREFIX + table.tableName;
+    }
+
+    /**
+     * Runs every phase on the calling thread.
+     */
+    public void run() {
+        if (start()) {
+            while (backfill()) {
+                // copy the next chunk.
+            }
+            buildIndexes();
+            swap();
+        }
+    }
+
+    /**
+     * Creates the shadow table and triggers, or resumes the migration in progress. Changes
+     * that need no rebuild are applied in place instead.
+     *
+     * @return true if the remaining phases must run.
+     * @throws IllegalStateException if the table does not exist or either table lacks a rowid.
+     */
+    public boolean start() {
+        if (isStarted()) {
+            return true;
+        }
+
+        final TableInfo info = TableInfo.read(mExecutor, mTable.tableName);
+        if (info == null) {
+            throw new IllegalStateException("no such table: " + mTable.tableName);
+        }
+
+        final SchemaDiff diff = SchemaDiff.compare(info.toTable(), mTable);
+        if (!diff.requiresRebuild()) {
+            inTransaction(() -> {
+                for (String sql : diff.createMigrationSql()) {
+                    mExecutor.execSQL(sql);
+                }
+            });
+            return false;
+        }
+
+        if (info.getOptions().contains(Table.Option.WITHOUT_ROWID) ||
+                mTable.getOptions().contains(Table.Option.WITHOUT_ROWID)) {
+            throw new IllegalStateException("WITHOUT ROWID table: " + mTable.tableName);
+        }
+
+        inTransaction(() -> {
+            mExecutor.execSQL("CREATE TABLE IF NOT EXISTS " + PROGRESS_TABLE + "(" +
+                    "table_name TEXT PRIMARY KEY NOT NULL, " +
+                    "copy_sql TEXT NOT NULL, " +
+                    "last_rowid INTEGER NOT NULL, " +
+                    "max_rowid INTEGER NOT NULL)");
+            mExecutor.execSQL("DROP TABLE IF EXISTS " + mShadowTableName);
+            mExecutor.execSQL(mTable.createBareSql(mShadowTableName));
+            for (String sql : diff.createMirrorTriggerSql(mShadowTableName)) {
+                mExecutor.execSQL(sql);
+            }
+
+            final SqlStatement progress = mExecutor.compileStatement("INSERT INTO " +
+                    PROGRESS_TABLE + " (table_name, copy_sql, last_rowid, max_rowid) " +
+                    "VALUES (?, ?, ?, (SELECT ifnull(max(rowid), 0) FROM " +
+                    mTable.tableName + "))");
+            try {
+                progress.bindString(1, mTable.tableName);
+                progress.bindString(2, diff.createMirrorCopySql(mShadowTableName) +
+                        " WHERE rowid > ? AND rowid <= ?");
+                progress.bindLong(3, Long.MIN_VALUE);
+                progress.executeInsert();
+            } finally {
+                progress.close();
+            }
+        });
+
+        return true;
+    }
+
+    public boolean isStarted() {
+        try (RowCursor c = mExecutor.query("SELECT 1 FROM sqlite_master " +
+                "WHERE type = 'table' AND name = ?", PROGRESS_TABLE)) {
+            if (!c.moveToNext()) {
+                return false;
+            }
+        }
+
+        try (RowCursor c = mExecutor.query("SELECT 1 FROM " + PROGRESS_TABLE +
+                " WHERE table_name = ?", mTable.tableName)) {
+            return c.moveToNext();
+        }
+    }
+
+    /**
+     * Copies the next chunk of the rows that existed at {@link #start()}, in one transaction.
+     *
+     * @return false once every row is copied.
+     */
+    public boolean backfill() {
+        String copySql = null;
+        long lastRowId = 0;
+        long maxRowId = 0;
+        try (RowCursor c = mExecutor.query("SELECT copy_sql, last_rowid, max_rowid FROM " +
+                PROGRESS_TABLE + " WHERE table_name = ?", mTable.tableName)) {
+            if (c.moveToNext()) {
+                copySql = c.getString(0);
+                lastRowId = c.getLong(1);
+                maxRowId = c.getLong(2);
+            }
+        }
+
+        if (copySql == null) {
+            throw new IllegalStateException("not started: " + mTable.tableName);
+        }
+
+        final long from = lastRowId;
+        final long to;
+        try (RowCursor c = mExecutor.query("SELECT max(rowid) FROM (SELECT rowid FROM " +
+                mTable.tableName + " WHERE rowid > " + from + " AND rowid <= " + maxRowId +
+                " ORDER BY rowid LIMIT " + mChunkSize + ")")) {
+            to = c.moveToNext() && !c.isNull(0) ? c.getLong(0) : from;
+        }
+
+        if (to == from) {
+            return false;
+        }
+
+        final String sql = copySql;
+        inTransaction(() -> {
+            final Metrics metrics = Metrics.installed();
+            final SqlStatement copy = mExecutor.compileStatement(sql);
+            final SqlStatement progress = mExecutor.compileStatement("UPDATE " +
+                    PROGRESS_TABLE + " SET last_rowid = ? WHERE table_name = ?");
+            try {
+                copy.bindLong(1, from);
+                copy.bindLong(2, to);
+                if (metrics == Metrics.NONE) {
+                    copy.execute();
+                } else {
+                    final long start = System.nanoTime();
+                    final int rows = copy.executeUpdateDelete();
+                    metrics.rowsCopied(mTable.tableName, rows, System.nanoTime() - start);
+                }
+
+                progress.bindLong(1, to);
+                progress.bindString(2, mTable.tableName);
+                progress.execute();
+            } finally {
+                copy.close();
+                progress.close();
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Builds the indexes of the new definition the shadow table lacks, under their final names,
+     * one per transaction. A live index holding such a name is first rebuilt on the live table as
+     * {@link #LIVE_INDEX_PREFIX} + name in the same transaction, so the live table keeps its
+     * lookups and unique constraints until the swap.
+     */
+    public void buildIndexes() {
+        for (String sql : mTable.createDeferredIndexSql(mShadowTableName)) {
+            final String name = indexName(sql);
+            if (readIndexSql(mShadowTableName, name) != null) {
+                continue;
+            }
+
+            inTransaction(() -> {
+                final String liveSql = readIndexSql(mTable.tableName, name);
+                if (liveSql != null) {
+                    mExecutor.execSQL(renameIndex(liveSql, name, LIVE_INDEX_PREFIX + name));
+                    mExecutor.execSQL("DROP INDEX " + name);
+                }
+                mExecutor.execSQL(sql);
+            });
+        }
+    }
+
+    /**
+     * Builds the indexes {@link #buildIndexes()} has not, then replaces the live table with the
+     * shadow table.
+     *
+     * @throws IllegalStateException if the backfill is not complete or foreign keys are
+     *                               enforced.
+     */
+    public void swap() {
+        try (RowCursor c = mExecutor.query("PRAGMA foreign_keys")) {
+            if (c.moveToNext() && c.getLong(0) != 0) {
+                throw new IllegalStateException("PRAGMA foreign_keys is on");
+            }
+        }
+
+        try (RowCursor c = mExecutor.query("SELECT 1 FROM " + PROGRESS_TABLE +
+                " WHERE table_name = ? AND last_rowid < max_rowid AND EXISTS (SELECT 1 FROM " +
+                mTable.tableName + " WHERE rowid > last_rowid AND rowid <= max_rowid)",
+                mTable.tableName)) {
+            if (c.moveToNext()) {
+                throw new IllegalStateException("backfill is not complete: " +
+                        mTable.tableName);
+            }
+        }
+
+        buildIndexes();
+
+        inTransaction(() -> {
+            // the shadow keeps the rowids, so an unchanged full-text index stays valid.
+            final TableInfo info = TableInfo.read(mExecutor, mTable.tableName);
+            final Set<String> keptFullTexts = new HashSet<>();
+            for (Table.FullText fullText : mTable.getFullTexts()) {
+                final String definition = info.getFullTextDefinition(fullText.name);
+                if (definition != null && firstLine(definition).equals(
+                        firstLine(fullText.createDefinition(mTable)))) {
+                    keptFullTexts.add(fullText.name);
+                }
+            }
+            for (String name : info.getFullTextNames()) {
+                if (!keptFullTexts.contains(name)) {
+                    for (String sql : Table.FullText.createDropSql(name)) {
+                        mExecutor.execSQL(sql);
+                    }
+                }
+            }
+
+            for (String sql : SchemaDiff.createDropMirrorTriggerSql(mShadowTableName)) {
+                mExecutor.execSQL(sql);
+            }
+            mExecutor.execSQL("DROP TABLE " + mTable.tableName);
+            mExecutor.execSQL("ALTER TABLE " + mShadowTableName + " RENAME TO " +
+                    mTable.tableName);
+            for (Table.FullText fullText : mTable.getFullTexts()) {
+                final List<String> sqls = fullText.createSql(mTable);
+                final boolean kept = keptFullTexts.contains(fullText.name);
+                for (String sql : kept ? sqls.subList(1, sqls.size()) : sqls) {
+                    mExecutor.execSQL(sql);
+                }
+                if (!kept) {
+                    mExecutor.execSQL(fullText.createRebuildSql());
+                }
+            }
+            deleteProgress();
+        });
+    }
+
+    /**
+     * Drops the shadow table and triggers, and gives the live indexes renamed by
+     * {@link #buildIndexes()} their names back.
+     */
+    public void abort() {
+        if (!isStarted()) {
+            return;
+        }
+
+        inTransaction(() -> {
+            for (String sql : SchemaDiff.createDropMirrorTriggerSql(mShadowTableName)) {
+                mExecutor.execSQL(sql);
+            }
+            mExecutor.execSQL("DROP TABLE IF EXISTS " + mShadowTableName);
+
+            final Map<String, String> renamed = new LinkedHashMap<>();
+            try (RowCursor c = mExecutor.query("SELECT name, sql FROM sqlite_master " +
+                    "WHERE type = 'index' AND tbl_name = ? AND name LIKE ? ESCAPE '\\'",
+                    mTable.tableName, LIVE_INDEX_PREFIX.replace("_", "\\_") + "%")) {
+                while (c.moveToNext()) {
+                    renamed.put(c.getString(0), c.getString(1));
+                }
+            }
+            for (Map.Entry<String, String> index : renamed.entrySet()) {
+                final String name = index.getKey().substring(LIVE_INDEX_PREFIX.length());
+                mExecutor.execSQL(renameIndex(index.getValue(), index.getKey(), name));
+                mExecutor.execSQL("DROP INDEX " + index.getKey());
+            }
+            deleteProgress();
+        });
+    }
+
+    private static String indexName(String createIndexSql) {
+        final String marker = " IF NOT EXISTS ";
+        final int start = createIndexSql.indexOf(marker) + marker.length();
+        return createIndexSql.substring(start, createIndexSql.indexOf(' ', start));
+    }
+
+    private String readIndexSql(String tableName, String name) {
+        try (RowCursor c = mExecutor.query("SELECT sql FROM sqlite_master " +
+                "WHERE type = 'index' AND tbl_name = ? AND name = ?", tableName, name)) {
+            return c.moveToNext() ? c.getString(0) : null;
+        }
+    }
+
+    private static String renameIndex(String createIndexSql, String name, String newName) {
+        final Matcher matcher = Pattern.compile("^(CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+" +
+                        "(?:IF\\s+NOT\\s+EXISTS\\s+)?)" + Pattern.quote(name) + "\\b",
+                Pattern.CASE_INSENSITIVE).matcher(createIndexSql);
+        if (!matcher.find()) {
+            throw new IllegalStateException("unexpected index definition: " + createIndexSql);
+        }
+
+        return matcher.group(1) + newName + createIndexSql.substring(matcher.end());
+    }
+
+    private static String firstLine(String definition) {
+        final int end = definition.indexOf('\n');
+        return end == -1 ? definition : definition.substring(0, end);
+    }
+
+    private void deleteProgress() {
+        final SqlStatement statement = mExecutor.compileStatement("DELETE FROM " +
+                PROGRESS_TABLE + " WHERE table_name = ?");
+        try {
+            statement.bindString(1, mTable.tableName);
+            statement.execute();
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void inTransaction(Runnable runnable) {
+        mExecutor.beginTransaction();
+        try {
+            runnable.run();
+            mExecutor.setTransactionSuccessful();
+        } finally {
+            mExecutor.endTransaction();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Typed, allocation-free row writer for bulk inserts.
+ * <p>
+ * Values are bound by {@link Table.Column} into a reusable row buffer without boxing. Every
+ * {@code batchSize} rows, or on {@link #flush()}, the buffered rows are bound into one
+ * compiled statement inside one transaction. Unbound columns are written as NULL. Written rows
+ * are invalidated in the {@link RowCache} given, if any, once the transaction ends.
+ */
+public class RowBinder implements Closeable {
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_TEXT = 3;
+    private static final byte TYPE_BLOB = 4;
+
+    private final SqlExecutor mExecutor;
+    private final SqlStatement mStatement;
+    private final Map<Table.Column, Integer> mIndexes;
+    private final int mColumnCount;
+    private final int mBatchSize;
+
+    private final RowCache<?> mCache;
+    private final int[] mKeyIndexes;
+    private final Object[][] mKeys;
+
+    private final byte[] mTypes;
+    private final long[] mLongs;
+    private final double[] mDoubles;
+    private final Object[] mObjects;
+    private int mRowCount;
+
+    /**
+     * Binds rows into {@link TableStatements#insertSql}.
+     */
+    public RowBinder(SqlExecutor executor, Table table, int batchSize) {
+        this(executor, table, table.getStatements().insertSql, batchSize);
+    }
+
+    /**
+     * @param sql one of {@link TableStatements#insertSql}, {@link
+     *            TableStatements#insertOrReplaceSql} or {@link TableStatements#upsertSql} of
+     *            {@code table}.
+     */
+    public RowBinder(SqlExecutor executor, Table table, String sql, int batchSize) {
+        this(executor, table, sql, batchSize, null);
+    }
+
+    /**
+     * @param cache cache of {@code table} to invalidate the written rows in, or null.
+     */
+    public RowBinder(SqlExecutor executor, Table table, String sql, int batchSize,
+            RowCache<?> cache) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize: " + batchSize);
+        }
+
+        mExecutor = Objects.requireNonNull(executor);
+        final TableStatements statements = table.getStatements();
+        final Table.Column[] columns = statements.getColumns();
+        mIndexes = new IdentityHashMap<>(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            mIndexes.put(columns[i], i);
+        }
+        mColumnCount = columns.length;
+        mBatchSize = batchSize;
+
+        final int capacity = mColumnCount * batchSize;
+        mTypes = new byte[capacity];
+        mLongs = new long[capacity];
+        mDoubles = new double[capacity];
+        mObjects = new Object[capacity];
+
+        mCache = cache;
+        if (cache == null) {
+            mKeyIndexes = null;
+            mKeys = null;
+        } else {
+            if (!cache.tableName.equals(table.tableName)) {
+                throw new IllegalArgumentException("cache of " + cache.tableName);
+            }
+
+            final Table.Column[] primaryKey = cache.getPrimaryKey();
+            mKeyIndexes = new int[primaryKey.length];
+            for (int i = 0; i < primaryKey.length; i++) {
+                mKeyIndexes[i] = statements.indexOf(primaryKey[i]);
+            }
+            mKeys = new Object[batchSize][];
+        }
+
+        mStatement = executor.compileStatement(Objects.requireNonNull(sql));
+    }
+
+    public RowBinder bindNull(Table.Column column) {
+        mTypes[slot(column)] = TYPE_NULL;
+        return this;
+    }
+
+    public RowBinder bindLong(Table.Column column, long value) {
+        final int slot = slot(column);
+        mTypes[slot] = TYPE_LONG;
+        mLongs[slot] = value;
+        return this;
+    }
+
+    public RowBinder bindDouble(Table.Column column, double value) {
+        final int slot = slot(column);
+        mTypes[slot] = TYPE_DOUBLE;
+        mDoubles[slot] = value;
+        return this;
+    }
+
+    public RowBinder bindText(Table.Column column, String value) {
+        final int slot = slot(column);
+        mTypes[slot] = value == null ? TYPE_NULL : TYPE_TEXT;
+        mObjects[slot] = value;
+        return this;
+    }
+
+    public RowBinder bindBlob(Table.Column column, byte[] value) {
+        final int slot = slot(column);
+        mTypes[slot] = value == null ? TYPE_NULL : TYPE_BLOB;
+        mObjects[slot] = value;
+        return this;
+    }
+
+    /**
+     * Completes the current row. Flushes when the buffer is full.
+     */
+    public void endRow() {
+        mRowCount++;
+        if (mRowCount == mBatchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the completed rows. A row that was bound but not ended is discarded.
+     */
+    public void flush() {
+        if (mRowCount == 0) {
+            clear();
+            return;
+        }
+
+        int keyCount = 0;
+        mExecutor.beginTransaction();
+        try {
+            for (int row = 0; row < mRowCount; row++) {
+                bindRow(row * mColumnCount);
+                mStatement.execute();
+                if (mCache != null) {
+                    final Object[] key = key(row * mColumnCount);
+                    if (key != null) {
+                        mKeys[keyCount++] = key;
+                    }
+                }
+            }
+            mExecutor.setTransactionSuccessful();
+        } finally {
+            mExecutor.endTransaction();
+            if (0 < keyCount) {
+                mCache.invalidateValues(mKeys, keyCount);
+                Arrays.fill(mKeys, null);
+            }
+            clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            mStatement.close();
+        }
+    }
+
+    private void bindRow(int offset) {
+        for (int column = 0; column < mColumnCount; column++) {
+            final int slot = offset + column;
+            final int index = column + 1;
+            switch (mTypes[slot]) {
+                case TYPE_LONG:
+                    mStatement.bindLong(index, mLongs[slot]);
+                    break;
+                case TYPE_DOUBLE:
+                    mStatement.bindDouble(index, mDoubles[slot]);
+                    break;
+                case TYPE_TEXT:
+                    mStatement.bindString(index, (String) mObjects[slot]);
+                    break;
+                case TYPE_BLOB:
+                    mStatement.bindBlob(index, (byte[]) mObjects[slot]);
+                    break;
+                default:
+                    mStatement.bindNull(index);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return the primary key of the row at {@code offset}, or null if part of it is NULL,
+     * e.g. a rowid to be assigned.
+     */
+    private Object[] key(int offset) {
+        final Object[] key = new Object[mKeyIndexes.length];
+        for (int i = 0; i < key.length; i++) {
+            final int slot = offset + mKeyIndexes[i];
+            switch (mTypes[slot]) {
+                case TYPE_LONG:
+                    key[i] = mLongs[slot];
+                    break;
+                case TYPE_DOUBLE:
+                    key[i] = mDoubles[slot];
+                    break;
+                case TYPE_TEXT:
+                    key[i] = mObjects[slot];
+                    break;
+                default:
+                    return null;
+            }
+        }
+
+        return mCache.toValues(key);
+    }
+
+    private void clear() {
+        Arrays.fill(mTypes, TYPE_NULL);
+        Arrays.fill(mObjects, null);
+        mRowCount = 0;
+    }
+
+    private int slot(Table.Column column) {
+        final Integer index = mIndexes.get(column);
+        if (index == null) {
+            throw new IllegalArgumentException("no such column: " + column.name);
+        }
+
+        return mRowCount * mColumnCount + index;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded cache of a {@link Table}'s rows by primary key, composite keys included.
+ * <p>
+ * Misses are read with {@link TableStatements#selectSql} and mapped into a new row, which is
+ * then shared by every hit; rows must not be modified. Eviction is a segmented LRU: a row
+ * enters a probation segment and moves to a protected segment, of up to 80% of the capacity,
+ * when it is hit again, so a scan of one-off lookups cannot flush the rows read repeatedly.
+ * <p>
+ * A {@link RowBinder} given this cache invalidates the rows it writes once its transaction
+ * ends. Rows written by any other statement must be passed to {@link #invalidate(Object...)}
+ * after the write commits. A row loaded while an invalidation happens is returned but not
+ * cached.
+ */
+public class RowCache<T> {
+    private static final int PROTECTED_PERCENT = 80;
+
+    public final String tableName;
+
+    private final String mSelectSql;
+    private final Table.Column[] mColumns;
+    private final Table.Column[] mPrimaryKey;
+    private final Supplier<? extends T> mFactory;
+    private final RowMapper<? super T> mMapper;
+    private final ToLongFunction<? super T> mWeigher;
+    private final long mMaxWeight;
+    private final long mMaxProtectedWeight;
+
+    private final LinkedHashMap<Object, Entry<T>> mProbation = new LinkedHashMap<>();
+    private final LinkedHashMap<Object, Entry<T>> mProtected =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long mProbationWeight;
+    private long mProtectedWeight;
+    private long mInvalidationCount;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    /**
+     * Caches up to {@code maxEntries} rows.
+     */
+    public RowCache(Table table, int maxEntries, Supplier<? extends T> factory,
+            RowMapper<? super T> mapper) {
+        this(table, maxEntries, row -> 1, factory, mapper);
+    }
+
+    /**
+     * Caches rows up to a total weight of {@code maxWeight}, e.g. bytes, with {@code weigher}
+     * built on {@link RowSizeEstimator.Estimate#getRowBytes()}. A row heavier than
+     * {@code maxWeight} is not cached.
+     */
+    public RowCache(Table table, long maxWeight, ToLongFunction<? super T> weigher,
+            Supplier<? extends T> factory, RowMapper<? super T> mapper) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight: " + maxWeight);
+        }
+
+        final TableStatements statements = table.getStatements();
+        if (statements.selectSql == null) {
+            throw new IllegalArgumentException("no primary key: " + table.tableName);
+        }
+
+        tableName = table.tableName;
+        mSelectSql = statements.selectSql;
+        mColumns = statements.getColumns();
+        mPrimaryKey = table.getPrimaryKey();
+        mWeigher = Objects.requireNonNull(weigher);
+        mFactory = Objects.requireNonNull(factory);
+        mMapper = Objects.requireNonNull(mapper);
+        mMaxWeight = maxWeight;
+        mMaxProtectedWeight = maxWeight * PROTECTED_PERCENT / 100;
+    }
+
+    /**
+     * @param key values of the primary key columns, in key order.
+     * @return the row, or null if there is none.
+     * @throws IllegalArgumentException if {@code key} does not match the primary key.
+     */
+    public T get(RowSource source, Object... key) {
+        final Object[] values = toValues(key);
+        final Object cacheKey = toCacheKey(values);
+        final long invalidationCount;
+        synchronized (this) {
+            final T row = lookup(cacheKey);
+            if (row != null) {
+                mHitCount++;
+                return row;
+            }
+
+            mMissCount++;
+            invalidationCount = mInvalidationCount;
+        }
+
+        final String[] args = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            args[i] = values[i].toString();
+        }
+
+        final T row;
+        try (RowReader reader = new RowReader(source.query(mSelectSql, args), mColumns)) {
+            if (!reader.moveToNext()) {
+                return null;
+            }
+
+            row = mFactory.get();
+            mMapper.map(reader, row);
+        }
+
+        synchronized (this) {
+            if (invalidationCount == mInvalidationCount) {
+                insert(cacheKey, row);
+            }
+        }
+
+        return row;
+    }
+
+    /**
+     * @param key values of the primary key columns, in key order.
+     */
+    public void invalidate(Object... key) {
+        final Object cacheKey = toCacheKey(toValues(key));
+        synchronized (this) {
+            mInvalidationCount++;
+            remove(cacheKey);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        mInvalidationCount++;
+        mProbation.clear();
+        mProtected.clear();
+        mProbationWeight = 0;
+        mProtectedWeight = 0;
+    }
+
+    public synchronized int size() {
+        return mProbation.size() + mProtected.size();
+    }
+
+    public synchronized long getWeight() {
+        return mProbationWeight + mProtectedWeight;
+    }
+
+    public long getMaxWeight() {
+        return mMaxWeight;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    public synchronized void resetCounts() {
+        mHitCount = 0;
+        mMissCount = 0;
+        mEvictionCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final long lookups = mHitCount + mMissCount;
+        return "RowCache{" + tableName +
+                ", size=" + size() +
+                ", weight=" + getWeight() + "/" + mMaxWeight +
+                ", hits=" + mHitCount +
+                ", misses=" + mMissCount +
+                ", hitRate=" + (lookups == 0 ? 0 : mHitCount * 100 / lookups) + "%" +
+                ", evictions=" + mEvictionCount +
+                "}";
+    }
+
+    Table.Column[] getPrimaryKey() {
+        return mPrimaryKey;
+    }
+
+    /**
+     * Invalidates the first {@code count} keys of {@code values}, each made by
+     * {@link #toValues(Object...)}.
+     */
+    synchronized void invalidateValues(Object[][] values, int count) {
+        mInvalidationCount++;
+        for (int i = 0; i < count; i++) {
+            remove(toCacheKey(values[i]));
+        }
+    }
+
+    /**
+     * @return {@code key} as stored by the key columns' affinities, so that e.g. {@code 1},
+     * {@code 1L} and {@code "1"} are the same INTEGER key.
+     */
+    Object[] toValues(Object... key) {
+        if (key.length != mPrimaryKey.length) {
+            throw new IllegalArgumentException("expected " + mPrimaryKey.length +
+                    " key values: " + Arrays.toString(key));
+        }
+
+        final Object[] values = new Object[key.length];
+        for (int i = 0; i < key.length; i++) {
+            values[i] = RowSizeEstimator.store(mPrimaryKey[i].getAffinity(), key[i]);
+            if (values[i] == null || values[i] instanceof byte[]) {
+                throw new IllegalArgumentException("unsupported key value: " +
+                        mPrimaryKey[i].name);
+            }
+        }
+
+        return values;
+    }
+
+    private static Object toCacheKey(Object[] values) {
+        return values.length == 1 ? values[0] : Arrays.asList(values);
+    }
+
+    private T lookup(Object key) {
+        Entry<T> entry = mProtected.get(key);
+        if (entry != null) {
+            return entry.row;
+        }
+
+        entry = mProbation.remove(key);
+        if (entry == null) {
+            return null;
+        }
+
+        mProbationWeight -= entry.weight;
+        mProtected.put(key, entry);
+        mProtectedWeight += entry.weight;
+
+        // demote the least recently used protected rows to the newest end of probation.
+        final Iterator<Map.Entry<Object, Entry<T>>> iterator =
+                mProtected.entrySet().iterator();
+        while (mMaxProtectedWeight < mProtectedWeight && 1 < mProtected.size()) {
+            final Map.Entry<Object, Entry<T>> eldest = iterator.next();
+            iterator.remove();
+            mProtectedWeight -= eldest.getValue().weight;
+            mProbation.put(eldest.getKey(), eldest.getValue());
+            mProbationWeight += eldest.getValue().weight;
+        }
+
+        return entry.row;
+    }
+
+    private void insert(Object key, T row) {
+        remove(key);
+        final long weight = mWeigher.applyAsLong(row);
+        if (weight < 0) {
+            throw new IllegalStateException("negative weight: " + weight);
+        }
+        if (mMaxWeight < weight) {
+            return;
+        }
+
+        mProbation.put(key, new Entry<>(row, weight));
+        mProbationWeight += weight;
+
+        while (mMaxWeight < mProbationWeight + mProtectedWeight) {
+            final LinkedHashMap<Object, Entry<T>> segment =
+                    mProbation.isEmpty() ? mProtected : mProbation;
+            final Iterator<Entry<T>> iterator = segment.values().iterator();
+            final long evicted = iterator.next().weight;
+            iterator.remove();
+            if (segment == mProbation) {
+                mProbationWeight -= evicted;
+            } else {
+                mProtectedWeight -= evicted;
+            }
+            mEvictionCount++;
+        }
+    }
+
+    private void remove(Object key) {
+        Entry<T> entry = mProbation.remove(key);
+        if (entry != null) {
+            mProbationWeight -= entry.weight;
+            return;
+        }
+
+        entry = mProtected.remove(key);
+        if (entry != null) {
+            mProtectedWeight -= entry.weight;
+        }
+    }
+
+    private static final class Entry<T> {
+        final T row;
+        final long weight;
+
+        Entry(T row, long weight) {
+            this.row = row;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.io.Closeable;
+
+/**
+ * Forward-only view of a query result. Mirrors the subset of {@code android.database.Cursor}
+ * the library needs, so the library stays free of Android classes.
+ */
+public interface RowCursor extends Closeable {
+    int FIELD_TYPE_NULL = 0;
+    int FIELD_TYPE_INTEGER = 1;
+    int FIELD_TYPE_FLOAT = 2;
+    int FIELD_TYPE_STRING = 3;
+    int FIELD_TYPE_BLOB = 4;
+
+    boolean moveToNext();
+
+    /**
+     * @return index of the column, or -1 if the result has no such column.
+     */
+    int getColumnIndex(String columnName);
+
+    /**
+     * @return storage class of the value, one of the {@code FIELD_TYPE_} constants.
+     */
+    int getType(int columnIndex);
+
+    boolean isNull(int columnIndex);
+
+    long getLong(int columnIndex);
+
+    double getDouble(int columnIndex);
+
+    String getString(int columnIndex);
+
+    byte[] getBlob(int columnIndex);
+
+    @Override
+    void close();
+}
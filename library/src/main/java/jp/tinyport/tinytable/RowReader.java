@@ -0,0 +1,235 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.io.Closeable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Typed reader of a {@link RowCursor} by {@link Table.Column}.
+ * <p>
+ * Cursor column indexes are resolved once, when the reader is created. Rows are then read into
+ * reusable objects through a {@link RowMapper}, or a page at a time into the primitive arrays
+ * of a {@link ColumnPage}, without per-row name lookups or boxing.
+ * <p>
+ * Columns are addressed either by {@link Table.Column} or, in hot loops, by their position in
+ * {@link #getColumns()}, see {@link #indexOf(Table.Column)}.
+ */
+public class RowReader implements Closeable {
+    private final RowCursor mCursor;
+    private final Table.Column[] mColumns;
+    private final int[] mCursorIndexes;
+    private final Map<Table.Column, Integer> mPositions;
+
+    /**
+     * Reads every column of {@code table}, in {@link TableStatements#getColumns()} order.
+     */
+    public RowReader(RowCursor cursor, Table table) {
+        this(cursor, table.getStatements().getColumns());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the result of {@code cursor} lacks one of
+     *                                  {@code columns}.
+     */
+    public RowReader(RowCursor cursor, Table.Column... columns) {
+        mCursor = Objects.requireNonNull(cursor);
+        mColumns = columns.clone();
+        mCursorIndexes = new int[mColumns.length];
+        mPositions = new IdentityHashMap<>(mColumns.length);
+        for (int i = 0; i < mColumns.length; i++) {
+            mCursorIndexes[i] = cursor.getColumnIndex(mColumns[i].name);
+            if (mCursorIndexes[i] == -1) {
+                throw new IllegalArgumentException("no such column in the result: " +
+                        mColumns[i].name);
+            }
+            mPositions.put(mColumns[i], i);
+        }
+    }
+
+    public Table.Column[] getColumns() {
+        return mColumns.clone();
+    }
+
+    /**
+     * @return position of {@code column} in {@link #getColumns()}.
+     */
+    public int indexOf(Table.Column column) {
+        final Integer position = mPositions.get(column);
+        if (position == null) {
+            throw new IllegalArgumentException("not read: " + column.name);
+        }
+
+        return position;
+    }
+
+    public boolean moveToNext() {
+        return mCursor.moveToNext();
+    }
+
+    /**
+     * Moves to the next row and maps it into {@code row}.
+     *
+     * @return false, leaving {@code row} untouched, if there is no next row.
+     */
+    public <T> boolean next(T row, RowMapper<? super T> mapper) {
+        if (!mCursor.moveToNext()) {
+            return false;
+        }
+
+        mapper.map(this, row);
+        return true;
+    }
+
+    /**
+     * Replaces the content of {@code page} with the following rows, up to its capacity.
+     *
+     * @return the number of rows read. 0 once the cursor is exhausted.
+     */
+    public int read(ColumnPage page) {
+        page.checkColumns(mColumns);
+        page.clear();
+        final int capacity = page.getCapacity();
+        int row = 0;
+        while (row < capacity && mCursor.moveToNext()) {
+            for (int i = 0; i < mColumns.length; i++) {
+                final int index = mCursorIndexes[i];
+                final int type = mCursor.getType(index);
+                if (type == RowCursor.FIELD_TYPE_NULL) {
+                    page.setNull(i, row);
+                    continue;
+                }
+
+                // the getters coerce, so values that do not fit the array are kept as is.
+                switch (page.getKind(i)) {
+                    case ColumnPage.KIND_LONG:
+                        if (type == RowCursor.FIELD_TYPE_INTEGER) {
+                            page.setLong(i, row, mCursor.getLong(index));
+                        } else {
+                            page.setMixed(i, row, readValue(index));
+                        }
+                        break;
+                    case ColumnPage.KIND_DOUBLE:
+                        if (type == RowCursor.FIELD_TYPE_FLOAT) {
+                            page.setDouble(i, row, mCursor.getDouble(index));
+                        } else {
+                            page.setMixed(i, row, readValue(index));
+                        }
+                        break;
+                    case ColumnPage.KIND_TEXT:
+                        page.setObject(i, row, mCursor.getString(index));
+                        break;
+                    case ColumnPage.KIND_VALUE:
+                        page.setObject(i, row, readValue(index));
+                        break;
+                    default:
+                        page.setObject(i, row, mCursor.getBlob(index));
+                        break;
+                }
+            }
+            row++;
+        }
+        page.setSize(row);
+
+        return row;
+    }
+
+    public boolean isNull(int position) {
+        return mCursor.isNull(mCursorIndexes[position]);
+    }
+
+    public long getLong(int position) {
+        return mCursor.getLong(mCursorIndexes[position]);
+    }
+
+    public int getInt(int position) {
+        return (int) mCursor.getLong(mCursorIndexes[position]);
+    }
+
+    public double getDouble(int position) {
+        return mCursor.getDouble(mCursorIndexes[position]);
+    }
+
+    public String getString(int position) {
+        return mCursor.getString(mCursorIndexes[position]);
+    }
+
+    public byte[] getBlob(int position) {
+        return mCursor.getBlob(mCursorIndexes[position]);
+    }
+
+    /**
+     * @return the value as its storage class: a {@link Long}, {@link Double}, {@link String},
+     * {@code byte[]} or null. for NUMERIC columns, which may hold any of them.
+     */
+    public Object getValue(int position) {
+        return readValue(mCursorIndexes[position]);
+    }
+
+    public boolean isNull(Table.Column column) {
+        return isNull(indexOf(column));
+    }
+
+    public long getLong(Table.Column column) {
+        return getLong(indexOf(column));
+    }
+
+    public int getInt(Table.Column column) {
+        return getInt(indexOf(column));
+    }
+
+    public double getDouble(Table.Column column) {
+        return getDouble(indexOf(column));
+    }
+
+    public String getString(Table.Column column) {
+        return getString(indexOf(column));
+    }
+
+    public byte[] getBlob(Table.Column column) {
+        return getBlob(indexOf(column));
+    }
+
+    public Object getValue(Table.Column column) {
+        return getValue(indexOf(column));
+    }
+
+    private Object readValue(int index) {
+        switch (mCursor.getType(index)) {
+            case RowCursor.FIELD_TYPE_NULL:
+                return null;
+            case RowCursor.FIELD_TYPE_INTEGER:
+                return mCursor.getLong(index);
+            case RowCursor.FIELD_TYPE_FLOAT:
+                return mCursor.getDouble(index);
+            case RowCursor.FIELD_TYPE_STRING:
+                return mCursor.getString(index);
+            default:
+                return mCursor.getBlob(index);
+        }
+    }
+
+    /**
+     * Closes the cursor.
+     */
+    @Override
+    public void close() {
+        mCursor.close();
+    }
+}
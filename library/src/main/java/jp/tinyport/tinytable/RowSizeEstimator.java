@@ -0,0 +1,322 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Estimates the on-disk size of a {@link Table}'s rows from sample values, following SQLite's
+ * record format and the conversions done by each column's {@link Affinity}.
+ * <p>
+ * Columns without samples are assumed to hold 8-byte numbers, or empty strings/blobs for
+ * {@link Affinity#TEXT} and {@link Affinity#BLOB} columns.
+ *
+ * @see <a href="https://www.sqlite.org/fileformat2.html#record_format">Record Format</a>
+ */
+public class RowSizeEstimator {
+    /**
+     * Bytes per cell besides the record: payload size and rowid varints, and the cell pointer.
+     */
+    private static final int CELL_OVERHEAD = 2 + 3 + 2;
+    private static final int PAGE_HEADER = 8;
+
+    private final Table.Column[] mColumns;
+    private final Map<Table.Column, Object[]> mSamples = new IdentityHashMap<>();
+
+    public RowSizeEstimator(Table table) {
+        final List<Table.Column> columns = new ArrayList<>();
+        for (Table.Column column : table.getColumns()) {
+            if (!column.isConstraint()) {
+                columns.add(column);
+            }
+        }
+        mColumns = columns.toArray(new Table.Column[columns.size()]);
+    }
+
+    /**
+     * @param values sample of the values {@code column} will hold, in expected proportions.
+     *               {@link Number}, {@link Boolean}, {@link CharSequence}, {@code byte[]} or
+     *               null.
+     */
+    public RowSizeEstimator sample(Table.Column column, Object... values) {
+        if (Objects.requireNonNull(values).length == 0) {
+            throw new IllegalArgumentException("no values");
+        }
+
+        mSamples.put(Objects.requireNonNull(column), values.clone());
+        return this;
+    }
+
+    public Estimate estimate() {
+        final double[] columnBytes = new double[mColumns.length];
+        final List<String> warnings = new ArrayList<>();
+        double headerBytes = 0;
+        for (int i = 0; i < mColumns.length; i++) {
+            final Table.Column column = mColumns[i];
+            final Affinity affinity = column.getAffinity();
+            warnDeclaredType(column, warnings);
+
+            final Object[] values = mSamples.get(column);
+            if (values == null) {
+                final boolean variable = affinity == Affinity.TEXT || affinity == Affinity.BLOB;
+                columnBytes[i] = variable ? 0 : 8;
+                headerBytes += 1;
+                continue;
+            }
+
+            double body = 0;
+            double header = 0;
+            int converted = 0;
+            for (Object value : values) {
+                final Object stored = store(affinity, value);
+                if (stored instanceof String && (!(value instanceof CharSequence) ||
+                        (affinity != Affinity.TEXT && affinity != Affinity.BLOB))) {
+                    converted++;
+                }
+                final long serialType = serialType(stored);
+                header += varintLength(serialType);
+                body += bodyLength(serialType);
+            }
+            columnBytes[i] = body / values.length;
+            headerBytes += header / values.length;
+
+            if (0 < converted) {
+                warnings.add(String.format(Locale.ROOT,
+                        "%s %s: %d of %d samples are stored as TEXT by %s affinity",
+                        column.name, column.getTypeName(), converted, values.length, affinity));
+            }
+        }
+
+        // the header size varint counts itself.
+        headerBytes += varintLength((long) Math.ceil(headerBytes) + 1);
+        double recordBytes = headerBytes;
+        for (double bytes : columnBytes) {
+            recordBytes += bytes;
+        }
+
+        return new Estimate(mColumns, columnBytes, recordBytes, warnings);
+    }
+
+    private static void warnDeclaredType(Table.Column column, List<String> warnings) {
+        final String type = column.getTypeName().toUpperCase(Locale.ROOT);
+        final Affinity affinity = column.getAffinity();
+        if (affinity == Affinity.NUMERIC && !type.equals("NUMERIC")) {
+            warnings.add(column.name + " " + column.getTypeName() +
+                    ": has NUMERIC affinity; text values that do not look like numbers are " +
+                    "stored as TEXT");
+        } else if (affinity == Affinity.INTEGER &&
+                (type.contains("FLOA") || type.contains("DOUB") || type.contains("REAL") ||
+                        type.contains("CHAR") || type.contains("TEXT"))) {
+            warnings.add(column.name + " " + column.getTypeName() +
+                    ": contains \"INT\" and has INTEGER affinity");
+        }
+    }
+
+    /**
+     * @return the value as SQLite stores it: {@link Long}, {@link Double}, {@link String},
+     * {@code byte[]} or null.
+     */
+    static Object store(Affinity affinity, Object value) {
+        if (value == null || value instanceof byte[]) {
+            return value;
+        }
+
+        Object stored;
+        if (value instanceof Boolean) {
+            stored = (Boolean) value ? 1L : 0L;
+        } else if (value instanceof Double || value instanceof Float) {
+            stored = ((Number) value).doubleValue();
+        } else if (value instanceof Number) {
+            stored = ((Number) value).longValue();
+        } else {
+            stored = value.toString();
+        }
+
+        switch (affinity) {
+            case TEXT:
+                return stored instanceof String ? stored : stored.toString();
+            case BLOB:
+                return stored;
+            case REAL:
+                stored = toNumber(stored);
+                return stored instanceof Long ? (double) (Long) stored : stored;
+            default:
+                return toNumber(stored);
+        }
+    }
+
+    private static Object toNumber(Object value) {
+        if (value instanceof String) {
+            final String text = ((String) value).trim();
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                // not an integer.
+            }
+
+            try {
+                final double real = Double.parseDouble(text);
+                if (!Double.isNaN(real) && !Double.isInfinite(real) &&
+                        !text.endsWith("f") && !text.endsWith("F") &&
+                        !text.endsWith("d") && !text.endsWith("D")) {
+                    value = real;
+                }
+            } catch (NumberFormatException e) {
+                return value;
+            }
+        }
+
+        if (value instanceof Double) {
+            final double real = (Double) value;
+            final long integer = (long) real;
+            if (integer == real && Math.abs(real) < 0x1p63) {
+                return integer;
+            }
+        }
+
+        return value;
+    }
+
+    static long serialType(Object value) {
+        if (value == null) {
+            return 0;
+        }
+
+        if (value instanceof Long) {
+            final long v = (Long) value;
+            if (v == 0) {
+                return 8;
+            } else if (v == 1) {
+                return 9;
+            } else if (-0x80L <= v && v <= 0x7fL) {
+                return 1;
+            } else if (-0x8000L <= v && v <= 0x7fffL) {
+                return 2;
+            } else if (-0x800000L <= v && v <= 0x7fffffL) {
+                return 3;
+            } else if (-0x80000000L <= v && v <= 0x7fffffffL) {
+                return 4;
+            } else if (-0x800000000000L <= v && v <= 0x7fffffffffffL) {
+                return 5;
+            }
+            return 6;
+        }
+
+        if (value instanceof Double) {
+            return 7;
+        }
+
+        if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8).length * 2L + 13;
+        }
+
+        return ((byte[]) value).length * 2L + 12;
+    }
+
+    private static long bodyLength(long serialType) {
+        switch ((int) Math.min(serialType, 12)) {
+            case 0:
+            case 8:
+            case 9:
+                return 0;
+            case 5:
+                return 6;
+            case 6:
+            case 7:
+                return 8;
+            case 12:
+                return (serialType - 12) / 2;
+            default:
+                return serialType;
+        }
+    }
+
+    static int varintLength(long value) {
+        int length = 1;
+        while (length < 9 && (value >>> (7 * length)) != 0) {
+            length++;
+        }
+
+        return length;
+    }
+
+    public static final class Estimate {
+        private final Table.Column[] mColumns;
+        private final double[] mColumnBytes;
+        private final double mRecordBytes;
+        private final List<String> mWarnings;
+
+        Estimate(Table.Column[] columns, double[] columnBytes, double recordBytes,
+                List<String> warnings) {
+            mColumns = columns;
+            mColumnBytes = columnBytes;
+            mRecordBytes = recordBytes;
+            mWarnings = Collections.unmodifiableList(warnings);
+        }
+
+        /**
+         * @return average record size, header included.
+         */
+        public double getRecordBytes() {
+            return mRecordBytes;
+        }
+
+        /**
+         * @return average bytes a row takes in a table b-tree leaf page.
+         */
+        public double getRowBytes() {
+            return mRecordBytes + CELL_OVERHEAD;
+        }
+
+        public double getColumnBytes(Table.Column column) {
+            for (int i = 0; i < mColumns.length; i++) {
+                if (mColumns[i] == column) {
+                    return mColumnBytes[i];
+                }
+            }
+
+            throw new IllegalArgumentException("no such column: " + column.name);
+        }
+
+        public int getRowsPerPage(int pageSize) {
+            return Math.max(1, (int) ((pageSize - PAGE_HEADER) / getRowBytes()));
+        }
+
+        /**
+         * @return estimated bytes of {@code rowCount} rows in leaf pages of {@code pageSize}.
+         */
+        public long estimateTableBytes(long rowCount, int pageSize) {
+            final int rowsPerPage = getRowsPerPage(pageSize);
+            return (rowCount + rowsPerPage - 1) / rowsPerPage * pageSize;
+        }
+
+        /**
+         * @return declared types and samples that cost more space than the type name
+         * suggests.
+         */
+        public List<String> getWarnings() {
+            return mWarnings;
+        }
+    }
+}
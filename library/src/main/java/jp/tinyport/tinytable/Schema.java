@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a table at compile time. The schema processor generates a {@link Table} subclass
+ * named after the annotated type plus {@code Table}, whose {@link Table#createSql()} and
+ * {@link Table#createIndexSql()} return constants rendered at build time by the same code as
+ * the runtime path.
+ * <p>
+ * Columns are the {@link Column}-annotated {@code String} constants of the annotated type, in
+ * declaration order. The constant value is the column name.
+ * <pre>
+ * &#64;Schema(name = "example", indexes = &#64;Schema.Index(name = "example_text", keys = "text"))
+ * interface ExampleSchema {
+ *     &#64;Schema.Column(type = "INTEGER", primaryKey = true, notNull = true)
+ *     String ID = "id";
+ *     &#64;Schema.Column(type = "TEXT")
+ *     String TEXT = "text";
+ * }
+ * </pre>
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface Schema {
+    String name();
+
+    Table.Option[] options() default {};
+
+    /**
+     * Composite primary key. use {@link Column#primaryKey()} for a single column.
+     */
+    String[] primaryKey() default {};
+
+    Keys[] unique() default {};
+
+    Index[] indexes() default {};
+
+    /**
+     * Attributes are rendered in the order PRIMARY KEY, AUTOINCREMENT, NOT NULL, UNIQUE,
+     * DEFAULT.
+     */
+    @Target(ElementType.FIELD)
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Column {
+        /**
+         * Name of a type of {@link Table}, e.g. {@code "INTEGER"} or {@code "UNSIGNED BIG INT"}.
+         */
+        String type();
+
+        boolean primaryKey() default false;
+
+        boolean autoincrement() default false;
+
+        boolean notNull() default false;
+
+        boolean unique() default false;
+
+        /**
+         * At most one value, quoted like {@link Table#DEFAULT(Object)}.
+         */
+        String[] defaultValue() default {};
+    }
+
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Keys {
+        String[] value();
+    }
+
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Index {
+        String name();
+
+        String[] keys();
+
+        boolean unique() default false;
+
+        /**
+         * Condition of a partial index, or empty.
+         */
+        String where() default "";
+    }
+}
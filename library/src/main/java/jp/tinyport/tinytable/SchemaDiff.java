@@ -0,0 +1,476 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Difference between two {@link Table} definitions and the cheapest SQL that turns one into
+ * the other.
+ * <p>
+ * Appending columns that SQLite's {@code ALTER TABLE ... ADD} accepts is done in place.
+ * Anything else (dropped, reordered or redefined columns, changed constraints or
+ * {@link Table.Option}s) rebuilds the table: the new table is created under a temporary name,
+ * the intersecting columns are copied, and the old table is dropped before the new one takes
+ * its name. Dropping a table whose rows are referenced by other tables fails while
+ * {@code PRAGMA foreign_keys} is on, so turn it off around such a migration.
+ * <p>
+ * Columns are compared by meaning rather than by text: attribute order, identifier case and
+ * whether a key is written as a column attribute or as a {@link Table.PrimaryKey} /
+ * {@link Table.Unique} constraint do not matter. FOREIGN KEY clauses are compared ignoring
+ * whitespace and case.
+ * <p>
+ * Secondary {@link Table.Index}es are compared by definition. Changed or removed ones are
+ * dropped before the table is migrated and new or changed ones are created afterwards; a
+ * rebuild recreates all of them once the rows are copied. {@link Table.FullText} companions
+ * are handled the same way, and re-indexed from the table's rows when created.
+ */
+public final class SchemaDiff {
+    public static final String TMP_TABLE_PREFIX = "tmp_new_table_";
+
+    private static final String[] MIRROR_TRIGGER_SUFFIXES = {"_insert", "_update", "_delete"};
+
+    public final Table from;
+    public final Table to;
+
+    private final List<Table.Column> mAddedColumns;
+    private final List<String> mCommonColumnNames;
+    private final List<String> mDroppedIndexNames;
+    private final List<Table.Index> mCreatedIndexes;
+    private final List<String> mDroppedFullTextNames;
+    private final List<Table.FullText> mCreatedFullTexts;
+    private final boolean mRebuild;
+
+    private SchemaDiff(Table from, Table to, List<Table.Column> addedColumns,
+            List<String> commonColumnNames, List<String> droppedIndexNames,
+            List<Table.Index> createdIndexes, List<String> droppedFullTextNames,
+            List<Table.FullText> createdFullTexts, boolean rebuild) {
+        this.from = from;
+        this.to = to;
+        mAddedColumns = Collections.unmodifiableList(addedColumns);
+        mCommonColumnNames = Collections.unmodifiableList(commonColumnNames);
+        mDroppedIndexNames = Collections.unmodifiableList(droppedIndexNames);
+        mCreatedIndexes = Collections.unmodifiableList(createdIndexes);
+        mDroppedFullTextNames = Collections.unmodifiableList(droppedFullTextNames);
+        mCreatedFullTexts = Collections.unmodifiableList(createdFullTexts);
+        mRebuild = rebuild;
+    }
+
+    public static SchemaDiff compare(Table from, Table to) {
+        Objects.requireNonNull(from);
+        Objects.requireNonNull(to);
+
+        final Map<String, Table.Column> fromColumns = new HashMap<>();
+        for (Table.Column column : from.getColumns()) {
+            if (!column.isConstraint()) {
+                fromColumns.put(key(column.name), column);
+            }
+        }
+
+        final List<Table.Column> addedColumns = new ArrayList<>();
+        final List<String> commonColumnNames = new ArrayList<>();
+        boolean rebuild = false;
+        for (Table.Column column : to.getColumns()) {
+            if (column.isConstraint()) {
+                continue;
+            }
+
+            final Table.Column fromColumn = fromColumns.get(key(column.name));
+            if (fromColumn == null) {
+                addedColumns.add(column);
+                rebuild |= !isAddable(column);
+            } else {
+                commonColumnNames.add(column.name);
+                // ADD appends, so a common column after an added one means a reorder.
+                rebuild |= !addedColumns.isEmpty() || !isSameColumn(fromColumn, column);
+            }
+        }
+
+        rebuild |= commonColumnNames.size() != fromColumns.size() ||
+                !from.getOptions().equals(to.getOptions()) ||
+                !primaryKey(from).equals(primaryKey(to)) ||
+                !uniqueKeys(from).equals(uniqueKeys(to)) ||
+                !foreignKeys(from).equals(foreignKeys(to));
+
+        final Map<String, String> fromIndexes = indexDefinitions(from);
+        final List<String> droppedIndexNames = new ArrayList<>();
+        final List<Table.Index> createdIndexes = new ArrayList<>();
+        for (Table.Index index : to.getIndexes()) {
+            final String definition = fromIndexes.remove(key(index.name));
+            if (rebuild || !index.createDefinition(to.tableName).equals(definition)) {
+                createdIndexes.add(index);
+                if (definition != null && !rebuild) {
+                    droppedIndexNames.add(index.name);
+                }
+            }
+        }
+
+        if (!rebuild) {
+            // a rebuild drops the old indexes along with the old table.
+            droppedIndexNames.addAll(fromIndexes.keySet());
+        }
+
+        // the virtual table outlives a rebuild, but its triggers and rowids do not.
+        final Map<String, String> fromFullTexts = fullTextDefinitions(from);
+        final List<String> droppedFullTextNames = new ArrayList<>();
+        final List<Table.FullText> createdFullTexts = new ArrayList<>();
+        for (Table.FullText fullText : to.getFullTexts()) {
+            final String definition = fromFullTexts.remove(key(fullText.name));
+            if (rebuild || !fullText.createDefinition(to).equals(definition)) {
+                createdFullTexts.add(fullText);
+                if (definition != null) {
+                    droppedFullTextNames.add(fullText.name);
+                }
+            }
+        }
+        droppedFullTextNames.addAll(fromFullTexts.keySet());
+
+        return new SchemaDiff(from, to, addedColumns, commonColumnNames, droppedIndexNames,
+                createdIndexes, droppedFullTextNames, createdFullTexts, rebuild);
+    }
+
+    public boolean isEmpty() {
+        return !mRebuild && mAddedColumns.isEmpty() && from.tableName.equals(to.tableName) &&
+                mDroppedIndexNames.isEmpty() && mCreatedIndexes.isEmpty() &&
+                mDroppedFullTextNames.isEmpty() && mCreatedFullTexts.isEmpty();
+    }
+
+    public boolean requiresRebuild() {
+        return mRebuild;
+    }
+
+    public List<Table.Column> getAddedColumns() {
+        return mAddedColumns;
+    }
+
+    /**
+     * @return names of the columns that exist in both definitions, in {@link #to} order.
+     */
+    public List<String> getCommonColumnNames() {
+        return mCommonColumnNames;
+    }
+
+    public List<String> getDroppedIndexNames() {
+        return mDroppedIndexNames;
+    }
+
+    public List<Table.Index> getCreatedIndexes() {
+        return mCreatedIndexes;
+    }
+
+    public List<String> getDroppedFullTextNames() {
+        return mDroppedFullTextNames;
+    }
+
+    public List<Table.FullText> getCreatedFullTexts() {
+        return mCreatedFullTexts;
+    }
+
+    public List<String> createMigrationSql() {
+        return createMigrationSql(TMP_TABLE_PREFIX + System.currentTimeMillis());
+    }
+
+    /**
+     * @param tmpTableName name the new table is created under while rebuilding. unused unless
+     *                     {@link #requiresRebuild()}.
+     */
+    public List<String> createMigrationSql(String tmpTableName) {
+        return createMigrationSql(tmpTableName, false);
+    }
+
+    /**
+     * Same as {@link #createMigrationSql(String)}, except that a rebuild creates the table with
+     * {@link Table#createBareSql()} and builds its UNIQUE constraints as unique indexes after
+     * the rows are copied, see {@link Table#createDeferredIndexSql()}.
+     */
+    public List<String> createDeferredMigrationSql() {
+        return createDeferredMigrationSql(TMP_TABLE_PREFIX + System.currentTimeMillis());
+    }
+
+    /**
+     * @see #createDeferredMigrationSql()
+     */
+    public List<String> createDeferredMigrationSql(String tmpTableName) {
+        return createMigrationSql(tmpTableName, true);
+    }
+
+    private List<String> createMigrationSql(String tmpTableName, boolean defer) {
+        final List<String> sql = new ArrayList<>(createDropIndexSql());
+        if (mRebuild) {
+            sql.add(createTableSql(tmpTableName, defer));
+            if (!mCommonColumnNames.isEmpty()) {
+                sql.add(createCopySql(tmpTableName));
+            }
+            sql.addAll(createSwapSql(tmpTableName));
+        } else {
+            if (!from.tableName.equals(to.tableName)) {
+                sql.add(createRenameSql(to.tableName));
+            }
+
+            for (Table.Column column : mAddedColumns) {
+                sql.add(column.createAddSql(to.tableName));
+            }
+        }
+
+        sql.addAll(createIndexSql(defer));
+        return sql;
+    }
+
+    String createTableSql(String tableName, boolean defer) {
+        return defer ? to.createBareSql(tableName) : to.createSql(tableName);
+    }
+
+    /**
+     * @return statements that replace {@link #from} with the rebuilt {@code tmpTableName}.
+     * renaming the new table rather than the old one leaves the FOREIGN KEY clauses of other
+     * tables alone, which SQLite 3.26 and later would otherwise rewrite to the old table.
+     * @see <a href="https://www.sqlite.org/lang_altertable.html#otheralter">Making Other Kinds
+     * Of Table Schema Changes</a>
+     */
+    List<String> createSwapSql(String tmpTableName) {
+        final List<String> sql = new ArrayList<>(2);
+        sql.add("DROP TABLE " + from.tableName);
+        sql.add("ALTER TABLE " + tmpTableName + " RENAME TO " + to.tableName);
+        return sql;
+    }
+
+    List<String> createDropIndexSql() {
+        final List<String> sql = new ArrayList<>(mDroppedIndexNames.size());
+        for (String name : mDroppedIndexNames) {
+            sql.add("DROP INDEX IF EXISTS " + name);
+        }
+        for (String name : mDroppedFullTextNames) {
+            sql.addAll(Table.FullText.createDropSql(name));
+        }
+
+        return sql;
+    }
+
+    List<String> createIndexSql(boolean defer) {
+        if (defer && mRebuild) {
+            return to.createDeferredIndexSql();
+        }
+
+        final List<String> sql = new ArrayList<>(mCreatedIndexes.size());
+        for (Table.Index index : mCreatedIndexes) {
+            sql.add(index.createSql(to.tableName));
+        }
+        for (Table.FullText fullText : mCreatedFullTexts) {
+            sql.addAll(fullText.createSql(to));
+            sql.add(fullText.createRebuildSql());
+        }
+
+        return sql;
+    }
+
+    String createRenameSql(String tableName) {
+        return "ALTER TABLE " + from.tableName + " RENAME TO " + Objects.requireNonNull(tableName);
+    }
+
+    /**
+     * @return {@code INSERT ... SELECT} of the common columns from {@link #from} into
+     * {@code targetTableName}.
+     */
+    String createCopySql(String targetTableName) {
+        final String columns = joinCommonColumnNames("");
+        return "INSERT INTO " + targetTableName + " (" + columns + ") SELECT " + columns +
+                " FROM " + from.tableName;
+    }
+
+    /**
+     * @return {@link #createCopySql(String)} that also copies the rowid and replaces the rows
+     * already written by {@link #createMirrorTriggerSql(String)}. append a WHERE clause on the
+     * rowid to copy a range.
+     */
+    String createMirrorCopySql(String targetTableName) {
+        final String columns = joinMirrorColumnNames("");
+        return "INSERT OR REPLACE INTO " + targetTableName + " (" + columns + ") " +
+                "SELECT " + columns + " FROM " + from.tableName;
+    }
+
+    /**
+     * @return triggers named after {@code targetTableName} that mirror every insert, update
+     * and delete of {@link #from} into it by rowid, for the common columns. they are dropped
+     * along with {@link #from}. deletes done by REPLACE conflict resolution only fire the
+     * delete trigger while {@code PRAGMA recursive_triggers} is on.
+     */
+    List<String> createMirrorTriggerSql(String targetTableName) {
+        final String upsert = "INSERT OR REPLACE INTO " + targetTableName + " (" +
+                joinMirrorColumnNames("") + ") VALUES (" + joinMirrorColumnNames("NEW.") + ");";
+        final String delete = "DELETE FROM " + targetTableName + " WHERE rowid = OLD.rowid;";
+        final String[] bodies = {upsert, delete + " " + upsert, delete};
+        final String[] events = {"INSERT", "UPDATE", "DELETE"};
+        final List<String> sql = new ArrayList<>(bodies.length);
+        for (int i = 0; i < bodies.length; i++) {
+            sql.add("CREATE TRIGGER " + targetTableName + MIRROR_TRIGGER_SUFFIXES[i] +
+                    " AFTER " + events[i] + " ON " + from.tableName +
+                    " BEGIN " + bodies[i] + " END");
+        }
+
+        return sql;
+    }
+
+    static List<String> createDropMirrorTriggerSql(String targetTableName) {
+        final List<String> sql = new ArrayList<>(MIRROR_TRIGGER_SUFFIXES.length);
+        for (String suffix : MIRROR_TRIGGER_SUFFIXES) {
+            sql.add("DROP TRIGGER IF EXISTS " + targetTableName + suffix);
+        }
+
+        return sql;
+    }
+
+    private String joinMirrorColumnNames(String prefix) {
+        final String columns = joinCommonColumnNames(prefix);
+        return prefix + "rowid" + (columns.isEmpty() ? "" : ", " + columns);
+    }
+
+    /**
+     * @return the common column names, each prefixed with {@code prefix}, separated by commas.
+     */
+    private String joinCommonColumnNames(String prefix) {
+        final StringBuilder columns = new StringBuilder();
+        for (String name : mCommonColumnNames) {
+            if (0 < columns.length()) {
+                columns.append(", ");
+            }
+            columns.append(prefix).append(name);
+        }
+
+        return columns.toString();
+    }
+
+    /**
+     * @return true if {@code sql} is a row copy of {@link #createCopySql(String)}, as opposed
+     * to the other {@code INSERT} statements of a migration such as
+     * {@link Table.FullText#createRebuildSql()}.
+     */
+    static boolean isCopySql(String sql) {
+        return sql.startsWith("INSERT INTO ") && sql.contains(") SELECT ");
+    }
+
+    /**
+     * @see <a href="https://www.sqlite.org/lang_altertable.html#altertabaddcol">ALTER TABLE ADD
+     * COLUMN</a>
+     */
+    private static boolean isAddable(Table.Column column) {
+        if (column.hasAttribute(Table.PRIMARY_KEY) || column.hasAttribute(Table.UNIQUE) ||
+                column.hasAttribute(Table.AUTOINCREMENT)) {
+            return false;
+        }
+
+        final String defaultValue = column.getDefaultValue();
+        if (defaultValue == null) {
+            return !column.hasAttribute(Table.NOT_NULL);
+        }
+
+        // Only constant defaults are allowed; DEFAULT() always renders a quoted literal.
+        return defaultValue.startsWith("'");
+    }
+
+    private static boolean isSameColumn(Table.Column from, Table.Column to) {
+        return from.name.equalsIgnoreCase(to.name) &&
+                from.getTypeName().equalsIgnoreCase(to.getTypeName()) &&
+                from.hasAttribute(Table.NOT_NULL) == to.hasAttribute(Table.NOT_NULL) &&
+                Objects.equals(from.getDefaultValue(), to.getDefaultValue()) &&
+                from.hasAttribute(Table.AUTOINCREMENT) == to.hasAttribute(Table.AUTOINCREMENT);
+    }
+
+    private static List<String> primaryKey(Table table) {
+        final List<String> keys = new ArrayList<>();
+        for (Table.Column column : table.getColumns()) {
+            if (column instanceof Table.PrimaryKey) {
+                return keys(column.getKeys());
+            }
+
+            if (!column.isConstraint() && column.hasAttribute(Table.PRIMARY_KEY)) {
+                keys.add(key(column.name));
+            }
+        }
+
+        return keys;
+    }
+
+    private static Set<List<String>> uniqueKeys(Table table) {
+        final Set<List<String>> keys = new HashSet<>();
+        for (Table.Column column : table.getColumns()) {
+            if (column instanceof Table.Unique) {
+                keys.add(keys(column.getKeys()));
+            } else if (!column.isConstraint() && column.hasAttribute(Table.UNIQUE)) {
+                keys.add(Collections.singletonList(key(column.name)));
+            }
+        }
+
+        return keys;
+    }
+
+    private static Set<String> foreignKeys(Table table) {
+        final Set<String> keys = new HashSet<>();
+        for (Table.Column column : table.getColumns()) {
+            if (column instanceof Table.ForeignKey) {
+                keys.add(key(column.createStatement()).replaceAll("\\s+", ""));
+            }
+        }
+
+        return keys;
+    }
+
+    private static List<String> keys(String[] names) {
+        final List<String> keys = new ArrayList<>(names.length);
+        for (String name : names) {
+            keys.add(key(name.trim()));
+        }
+
+        return keys;
+    }
+
+    private static Map<String, String> indexDefinitions(Table table) {
+        final Map<String, String> definitions = new HashMap<>();
+        for (Table.Index index : table.getIndexes()) {
+            definitions.put(key(index.name), index.createDefinition(table.tableName));
+        }
+
+        return definitions;
+    }
+
+    private static Map<String, String> fullTextDefinitions(Table table) {
+        final Map<String, String> definitions = new HashMap<>();
+        if (table instanceof TableInfo.IntrospectedTable) {
+            for (Map.Entry<String, String> entry :
+                    ((TableInfo.IntrospectedTable) table).fullTextDefinitions.entrySet()) {
+                definitions.put(key(entry.getKey()), entry.getValue());
+            }
+        } else {
+            for (Table.FullText fullText : table.getFullTexts()) {
+                definitions.put(key(fullText.name), fullText.createDefinition(table));
+            }
+        }
+
+        return definitions;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Hash of the DDL rendered by a set of {@link Table}s: columns, attributes, constraints,
+ * options and secondary indexes. Equal fingerprints mean equal declarations, so a stored
+ * fingerprint that still matches lets startup skip {@link TableInfo} introspection.
+ * <p>
+ * The fingerprint is kept in the one-row {@link #METADATA_TABLE}, or in
+ * {@code PRAGMA user_version} when nothing else owns it. Android's {@code SQLiteOpenHelper}
+ * keeps its version in {@code user_version}, so use the metadata table there.
+ */
+public final class SchemaFingerprint implements MigrationStep {
+    public static final String METADATA_TABLE = "tinytable_schema";
+
+    public final long value;
+
+    private SchemaFingerprint(long value) {
+        this.value = value;
+    }
+
+    /**
+     * @param tables hashed in {@link Table#tableName} order, so the order they are passed in
+     *               does not matter.
+     */
+    public static SchemaFingerprint of(Table... tables) {
+        final Table[] sorted = Objects.requireNonNull(tables).clone();
+        Arrays.sort(sorted, (l, r) -> l.tableName.compareTo(r.tableName));
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+
+        for (Table table : sorted) {
+            for (String sql : table.createSchemaSql()) {
+                digest.update(sql.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ';');
+            }
+            digest.update((byte) '\n');
+        }
+
+        final byte[] hash = digest.digest();
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (hash[i] & 0xff);
+        }
+
+        return new SchemaFingerprint(value);
+    }
+
+    /**
+     * @return true if {@link #METADATA_TABLE} holds this fingerprint.
+     */
+    public boolean matches(RowSource source) {
+        try (RowCursor c = source.query("SELECT 1 FROM sqlite_master " +
+                "WHERE type = 'table' AND name = ?", METADATA_TABLE)) {
+            if (!c.moveToNext()) {
+                return false;
+            }
+        }
+
+        try (RowCursor c = source.query("SELECT fingerprint FROM " + METADATA_TABLE)) {
+            return c.moveToNext() && !c.isNull(0) && c.getLong(0) == value;
+        }
+    }
+
+    /**
+     * Writes this fingerprint into {@link #METADATA_TABLE} in its own transaction.
+     */
+    public void store(SqlExecutor executor) {
+        final MigrationPlan.Builder plan = MigrationPlan.builder();
+        plan(plan);
+        plan.build().run(executor);
+    }
+
+    /**
+     * Writes this fingerprint into {@link #METADATA_TABLE} as part of {@code plan}, so it is
+     * committed together with the migration.
+     */
+    @Override
+    public void plan(MigrationPlan.Builder plan) {
+        plan.execSQL("CREATE TABLE IF NOT EXISTS " + METADATA_TABLE + "(" +
+                "id INTEGER PRIMARY KEY CHECK (id = 0), " +
+                "fingerprint INTEGER NOT NULL)")
+                .execSQL("INSERT OR REPLACE INTO " + METADATA_TABLE + " (id, fingerprint) " +
+                        "VALUES (0, ?)", value);
+    }
+
+    /**
+     * @return this fingerprint folded into a non-zero {@code user_version}. 0 is left for new
+     * databases.
+     */
+    public int toUserVersion() {
+        final int userVersion = (int) (value ^ (value >>> 32));
+        return userVersion == 0 ? 1 : userVersion;
+    }
+
+    public boolean matchesUserVersion(RowSource source) {
+        try (RowCursor c = source.query("PRAGMA user_version")) {
+            return c.moveToNext() && c.getLong(0) == toUserVersion();
+        }
+    }
+
+    public void storeUserVersion(SqlExecutor executor) {
+        executor.execSQL("PRAGMA user_version = " + toUserVersion());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SchemaFingerprint && ((SchemaFingerprint) o).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%016x", value);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Tables ordered by their {@link Table.ForeignKey} dependencies: every table comes after the
+ * tables it references, so creating or rebuilding them in {@link #getTables()} order never
+ * refers to a missing table. References to tables outside the set and to the table itself
+ * are ignored.
+ * <p>
+ * A rebuilt table keeps its name throughout, see {@link SchemaDiff}, so the foreign keys of
+ * the tables referencing it stay valid. Dropping its old copy fails while rows reference it
+ * and {@code PRAGMA foreign_keys} is on, so run such migrations with the pragma off.
+ * <p>
+ * Migrations read the live schema on the calling thread, then diff and render the SQL of each
+ * table in parallel on a {@link ForkJoinPool}. The statements are returned in dependency order
+ * for a single writer.
+ */
+public final class SchemaSet {
+    private final List<Table> mTables;
+
+    /**
+     * @throws IllegalArgumentException if two tables have the same name or the foreign keys
+     *                                  form a cycle.
+     */
+    public SchemaSet(Table... tables) {
+        final Map<String, Table> byName = new HashMap<>();
+        for (Table table : tables) {
+            if (byName.put(key(table.tableName), Objects.requireNonNull(table)) != null) {
+                throw new IllegalArgumentException("duplicate table: " + table.tableName);
+            }
+        }
+
+        final Map<Table, Set<Table>> dependencies = new HashMap<>();
+        for (Table table : tables) {
+            final Set<Table> references = new LinkedHashSet<>();
+            for (Table.Column column : table.getColumns()) {
+                if (column instanceof Table.ForeignKey) {
+                    final Table refTable = byName.get(key(
+                            ((Table.ForeignKey) column).getReferencedTable().tableName));
+                    if (refTable != null && refTable != table) {
+                        references.add(refTable);
+                    }
+                }
+            }
+            dependencies.put(table, references);
+        }
+
+        // Kahn's algorithm; ties keep declaration order.
+        final List<Table> sorted = new ArrayList<>(tables.length);
+        final Set<Table> remaining = new LinkedHashSet<>();
+        Collections.addAll(remaining, tables);
+        while (!remaining.isEmpty()) {
+            Table next = null;
+            for (Table table : remaining) {
+                if (sorted.containsAll(dependencies.get(table))) {
+                    next = table;
+                    break;
+                }
+            }
+
+            if (next == null) {
+                final List<String> names = new ArrayList<>();
+                for (Table table : remaining) {
+                    names.add(table.tableName);
+                }
+                throw new IllegalArgumentException("foreign key cycle among " + names);
+            }
+
+            sorted.add(next);
+            remaining.remove(next);
+        }
+
+        mTables = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * @return the tables, referenced tables first.
+     */
+    public List<Table> getTables() {
+        return mTables;
+    }
+
+    /**
+     * @return {@link Table#createSchemaSql()} of every table, in dependency order.
+     */
+    public List<String> createSchemaSql() {
+        final List<String> sql = new ArrayList<>();
+        for (Table table : mTables) {
+            sql.addAll(table.createSchemaSql());
+        }
+
+        return sql;
+    }
+
+    public List<String> createMigrationSql(RowSource source) {
+        return createMigrationSql(source, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Diffs every table against the live schema of {@code source}. Missing tables are created
+     * and the others migrated with {@link SchemaDiff#createDeferredMigrationSql()}.
+     *
+     * @param pool runs the diffing and rendering. {@code source} is only queried on the calling
+     *             thread, so it may be in a transaction.
+     */
+    public List<String> createMigrationSql(RowSource source, ForkJoinPool pool) {
+        final List<String> sql = new ArrayList<>();
+        for (List<String> tableSql : prepareMigrationSql(source, pool)) {
+            sql.addAll(tableSql);
+        }
+
+        return sql;
+    }
+
+    /**
+     * @return the migration SQL of each of {@link #getTables()}.
+     */
+    List<List<String>> prepareMigrationSql(RowSource source, ForkJoinPool pool) {
+        final List<Callable<List<String>>> tasks = new ArrayList<>(mTables.size());
+        for (Table table : mTables) {
+            final TableInfo info = TableInfo.read(source, table.tableName);
+            tasks.add(() -> info == null ?
+                    table.createSchemaSql() :
+                    SchemaDiff.compare(info.toTable(), table).createDeferredMigrationSql());
+        }
+
+        final List<List<String>> sql = new ArrayList<>(mTables.size());
+        for (Future<List<String>> future : pool.invokeAll(tasks)) {
+            try {
+                sql.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        return sql;
+    }
+
+    private static String key(String tableName) {
+        return tableName.toLowerCase(Locale.ROOT);
+    }
+}
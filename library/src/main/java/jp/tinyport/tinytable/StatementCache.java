@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled statements keyed by SQL, closed together.
+ */
+class StatementCache implements AutoCloseable {
+    private final SqlExecutor mExecutor;
+    private final Map<String, SqlStatement> mStatements = new HashMap<>();
+
+    StatementCache(SqlExecutor executor) {
+        mExecutor = executor;
+    }
+
+    SqlStatement get(String sql) {
+        SqlStatement statement = mStatements.get(sql);
+        if (statement == null) {
+            statement = mExecutor.compileStatement(sql);
+            mStatements.put(sql, statement);
+        } else {
+            statement.clearBindings();
+        }
+
+        return statement;
+    }
+
+    static void bind(SqlStatement statement, Object[] bindArgs) {
+        for (int i = 0; i < bindArgs.length; i++) {
+            final int index = i + 1;
+            final Object arg = bindArgs[i];
+            if (arg == null) {
+                statement.bindNull(index);
+            } else if (arg instanceof Long || arg instanceof Integer || arg instanceof Short ||
+                    arg instanceof Byte) {
+                statement.bindLong(index, ((Number) arg).longValue());
+            } else if (arg instanceof Double || arg instanceof Float) {
+                statement.bindDouble(index, ((Number) arg).doubleValue());
+            } else if (arg instanceof Boolean) {
+                statement.bindLong(index, (Boolean) arg ? 1 : 0);
+            } else if (arg instanceof byte[]) {
+                statement.bindBlob(index, (byte[]) arg);
+            } else {
+                statement.bindString(index, arg.toString());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (SqlStatement statement : mStatements.values()) {
+            statement.close();
+        }
+        mStatements.clear();
+    }
+}
@@ -16,10 +16,22 @@
 
 package jp.tinyport.tinytable;
 
-import java.lang.reflect.Array;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.Set;
 
 public abstract class Table {
+    /**
+     * Name prefix of the unique indexes that stand in for UNIQUE constraints. see
+     * {@link #createDeferredIndexSql()}.
+     */
+    public static final String UNIQUE_INDEX_PREFIX = "tinytable_unique_";
+
     public final String tableName;
 
     protected static final Type INTEGER = new Type("INTEGER");
@@ -42,44 +54,445 @@ public abstract class Table {
     protected static final Type BOOLEAN = new Type("BOOLEAN");
     protected static final Type DATE = new Type("DATE");
     protected static final Type DATETIME = new Type("DATETIME");
+    protected static final Type ANY = new Type("ANY");
     protected static final Attribute PRIMARY_KEY = new Attribute("PRIMARY KEY");
     protected static final Attribute UNIQUE = new Attribute("UNIQUE");
     protected static final Attribute NOT_NULL = new Attribute("NOT NULL");
     protected static final Attribute AUTOINCREMENT = new Attribute("AUTOINCREMENT");
 
+    private final Set<Option> mOptions;
     private final Column[] mColumns;
+    private final Index[] mIndexes;
+    private final FullText[] mFullTexts;
+
+    /**
+     * Rendered {@link #createSql()}. Racy single-check: rendering is idempotent and
+     * {@link String} is immutable, so a duplicated first render is harmless.
+     */
+    private String mCreateSql;
+    private TableStatements mStatements;
 
+    /**
+     * @param rest columns, constraints ({@link PrimaryKey}, {@link Unique}, {@link ForeignKey}),
+     *             secondary {@link Index}es and {@link FullText} companions. indexes and
+     *             companions are not part of {@link #getColumns()}.
+     */
     public Table(String tableName, Column column, Column... rest) {
+        this(tableName, EnumSet.noneOf(Option.class), column, rest);
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code options} cannot be applied to the columns.
+     */
+    public Table(String tableName, Set<Option> options, Column column, Column... rest) {
         this.tableName = Objects.requireNonNull(tableName);
-        mColumns = concat(Objects.requireNonNull(column), Objects.requireNonNull(rest));
+        final Set<Option> optionSet = EnumSet.noneOf(Option.class);
+        optionSet.addAll(Objects.requireNonNull(options));
+        mOptions = Collections.unmodifiableSet(optionSet);
+        final Column[] columns =
+                concat(Objects.requireNonNull(column), Objects.requireNonNull(rest));
+
+        int indexCount = 0;
+        int fullTextCount = 0;
+        for (Column c : columns) {
+            if (c instanceof Index) {
+                indexCount++;
+            } else if (c instanceof FullText) {
+                fullTextCount++;
+            }
+        }
+
+        if (indexCount == 0 && fullTextCount == 0) {
+            mColumns = columns;
+            mIndexes = new Index[0];
+            mFullTexts = new FullText[0];
+        } else {
+            mColumns = new Column[columns.length - indexCount - fullTextCount];
+            mIndexes = new Index[indexCount];
+            mFullTexts = new FullText[fullTextCount];
+            for (int i = 0, columnIndex = 0, indexIndex = 0, fullTextIndex = 0;
+                    i < columns.length; i++) {
+                if (columns[i] instanceof Index) {
+                    mIndexes[indexIndex++] = (Index) columns[i];
+                } else if (columns[i] instanceof FullText) {
+                    mFullTexts[fullTextIndex++] = (FullText) columns[i];
+                } else {
+                    mColumns[columnIndex++] = columns[i];
+                }
+            }
+        }
+
+        validateOptions();
+        validateFullTexts();
     }
 
     public String createSql() {
-        final StringBuilder builder = new StringBuilder();
-        builder.append("CREATE TABLE ")
-                .append(tableName)
-                .append('(');
+        String sql = mCreateSql;
+        if (sql == null) {
+            final Metrics metrics = Metrics.installed();
+            final long start = Metrics.nanoTime(metrics);
+            sql = renderCreateSql();
+            mCreateSql = sql;
+            if (metrics != Metrics.NONE) {
+                metrics.ddlRendered(tableName, sql.length(), System.nanoTime() - start);
+            }
+        }
 
-        for (Column column : mColumns) {
-            builder.append(column.createStatement())
-                    .append(", ");
+        return sql;
+    }
+
+    /**
+     * @return {@link #createSql()} of a table named {@code name}.
+     */
+    String createSql(String name) {
+        if (name.equals(tableName)) {
+            return createSql();
         }
 
-        final int length = builder.length();
-        builder.replace(length - 2, length, ")");
+        final Metrics metrics = Metrics.installed();
+        final long start = Metrics.nanoTime(metrics);
+        final String sql = renderCreateSql(name);
+        if (metrics != Metrics.NONE) {
+            metrics.ddlRendered(tableName, sql.length(), System.nanoTime() - start);
+        }
+
+        return sql;
+    }
 
-        return builder.toString();
+    public Set<Option> getOptions() {
+        return mOptions;
     }
 
     public Column[] getColumns() {
         return mColumns;
     }
 
+    public Index[] getIndexes() {
+        return mIndexes;
+    }
+
+    public FullText[] getFullTexts() {
+        return mFullTexts;
+    }
+
+    /**
+     * @return {@code CREATE INDEX} statements of {@link #getIndexes()}.
+     */
+    public List<String> createIndexSql() {
+        final Metrics metrics = Metrics.installed();
+        final long start = Metrics.nanoTime(metrics);
+        final List<String> sql = new ArrayList<>(mIndexes.length);
+        int length = 0;
+        for (Index index : mIndexes) {
+            final String indexSql = index.createSql(tableName);
+            sql.add(indexSql);
+            length += indexSql.length();
+        }
+
+        if (metrics != Metrics.NONE && mIndexes.length != 0) {
+            metrics.ddlRendered(tableName, length, System.nanoTime() - start);
+        }
+
+        return sql;
+    }
+
+    /**
+     * @return {@code CREATE VIRTUAL TABLE} and sync trigger statements of
+     * {@link #getFullTexts()}.
+     */
+    public List<String> createFullTextSql() {
+        final Metrics metrics = Metrics.installed();
+        final long start = Metrics.nanoTime(metrics);
+        final List<String> sql = new ArrayList<>();
+        int length = 0;
+        for (FullText fullText : mFullTexts) {
+            for (String statement : fullText.createSql(this)) {
+                sql.add(statement);
+                length += statement.length();
+            }
+        }
+
+        if (metrics != Metrics.NONE && mFullTexts.length != 0) {
+            metrics.ddlRendered(tableName, length, System.nanoTime() - start);
+        }
+
+        return sql;
+    }
+
+    /**
+     * @return {@link #createSql()} followed by {@link #createIndexSql()} and
+     * {@link #createFullTextSql()}.
+     */
+    public List<String> createSchemaSql() {
+        final List<String> sql = new ArrayList<>(1 + mIndexes.length);
+        sql.add(createSql());
+        sql.addAll(createIndexSql());
+        sql.addAll(createFullTextSql());
+
+        return sql;
+    }
+
+    /**
+     * @return {@link #createSql()} without UNIQUE constraints, for bulk loading. build them
+     * after loading with {@link #createDeferredIndexSql()}.
+     */
+    public String createBareSql() {
+        return createBareSql(tableName);
+    }
+
+    /**
+     * @return {@link #createBareSql()} of a table named {@code name}.
+     */
+    String createBareSql(String name) {
+        final Metrics metrics = Metrics.installed();
+        final long start = Metrics.nanoTime(metrics);
+        final StringBuilder builder = new StringBuilder("CREATE TABLE ")
+                .append(name)
+                .append('(');
+        boolean firstTime = true;
+        for (Column column : mColumns) {
+            if (column instanceof Unique) {
+                continue;
+            }
+
+            if (firstTime) {
+                firstTime = false;
+            } else {
+                builder.append(", ");
+            }
+            builder.append(column.isConstraint() ?
+                    column.createStatement() :
+                    column.createStatementWithout(UNIQUE));
+        }
+
+        final String sql = appendOptions(builder.append(')')).toString();
+        if (metrics != Metrics.NONE) {
+            metrics.ddlRendered(tableName, sql.length(), System.nanoTime() - start);
+        }
+
+        return sql;
+    }
+
+    /**
+     * @return unique indexes in place of the UNIQUE constraints left out by
+     * {@link #createBareSql()}, followed by {@link #createIndexSql()},
+     * {@link #createFullTextSql()} and a {@link FullText#createRebuildSql()} of each companion
+     * to index the loaded rows at once.
+     */
+    public List<String> createDeferredIndexSql() {
+        final List<String> sql = createUniqueIndexSql(tableName);
+        sql.addAll(createIndexSql());
+        sql.addAll(createFullTextSql());
+        for (FullText fullText : mFullTexts) {
+            sql.add(fullText.createRebuildSql());
+        }
+
+        return sql;
+    }
+
+    /**
+     * @return {@link #createDeferredIndexSql()} with the same index names, on the table named
+     * {@code onTableName}. {@link FullText} companions are left out.
+     */
+    List<String> createDeferredIndexSql(String onTableName) {
+        final List<String> sql = createUniqueIndexSql(onTableName);
+        for (Index index : mIndexes) {
+            sql.add(index.createSql(onTableName));
+        }
+
+        return sql;
+    }
+
+    private List<String> createUniqueIndexSql(String onTableName) {
+        final List<String> sql = new ArrayList<>();
+        for (Column column : mColumns) {
+            final String keys;
+            if (column instanceof Unique) {
+                keys = column.getTypeName();
+            } else if (!column.isConstraint() && column.hasAttribute(UNIQUE)) {
+                keys = "(" + column.name + ")";
+            } else {
+                continue;
+            }
+
+            sql.add("CREATE UNIQUE INDEX IF NOT EXISTS " + UNIQUE_INDEX_PREFIX + tableName +
+                    "_" + (sql.size() + 1) + " ON " + onTableName + keys);
+        }
+
+        return sql;
+    }
+
+    /**
+     * @return cached DML of this table. see {@link TableStatements}.
+     */
+    public TableStatements getStatements() {
+        TableStatements statements = mStatements;
+        if (statements == null) {
+            statements = new TableStatements(this);
+            mStatements = statements;
+        }
+
+        return statements;
+    }
+
+    /**
+     * @return columns of the declared primary key, in key order. empty if none is declared.
+     */
+    Column[] getPrimaryKey() {
+        for (Column column : mColumns) {
+            if (column instanceof PrimaryKey) {
+                final String[] keys = column.getKeys();
+                final Column[] primaryKey = new Column[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    primaryKey[i] = findColumn(keys[i].trim());
+                    if (primaryKey[i] == null) {
+                        throw new IllegalStateException("no such column: " + keys[i]);
+                    }
+                }
+
+                return primaryKey;
+            }
+        }
+
+        for (Column column : mColumns) {
+            if (!column.isConstraint() && column.hasAttribute(PRIMARY_KEY)) {
+                return new Column[]{column};
+            }
+        }
+
+        return new Column[0];
+    }
+
+    Column findColumn(String name) {
+        for (Column column : mColumns) {
+            if (!column.isConstraint() && column.name.equalsIgnoreCase(name)) {
+                return column;
+            }
+        }
+
+        return null;
+    }
+
+    String renderCreateSql() {
+        return renderCreateSql(tableName);
+    }
+
+    private String renderCreateSql(String name) {
+        final String prefix = "CREATE TABLE ";
+        final String[] statements = new String[mColumns.length];
+        int length = prefix.length() + name.length() + 2;
+        for (int i = 0; i < mColumns.length; i++) {
+            statements[i] = mColumns[i].createStatement();
+            length += statements[i].length();
+        }
+        length += (statements.length - 1) * 2;
+
+        for (Option option : mOptions) {
+            length += option.sql.length() + 2;
+        }
+
+        final StringBuilder builder = new StringBuilder(length)
+                .append(prefix)
+                .append(name)
+                .append('(');
+        join(builder, ", ", statements);
+
+        return appendOptions(builder.append(')')).toString();
+    }
+
+    private StringBuilder appendOptions(StringBuilder builder) {
+        boolean firstTime = true;
+        for (Option option : mOptions) {
+            builder.append(firstTime ? " " : ", ").append(option.sql);
+            firstTime = false;
+        }
+
+        return builder;
+    }
+
+    private void validateOptions() {
+        if (mOptions.contains(Option.WITHOUT_ROWID)) {
+            if (getPrimaryKey().length == 0) {
+                throw new IllegalArgumentException(
+                        "WITHOUT ROWID table requires a PRIMARY KEY: " + tableName);
+            }
+
+            for (Column column : mColumns) {
+                if (!column.isConstraint() && column.hasAttribute(AUTOINCREMENT)) {
+                    throw new IllegalArgumentException(
+                            "AUTOINCREMENT is not allowed on WITHOUT ROWID table: " +
+                                    tableName + "." + column.name);
+                }
+            }
+        }
+
+        if (mOptions.contains(Option.STRICT)) {
+            for (Column column : mColumns) {
+                if (column.isConstraint()) {
+                    continue;
+                }
+
+                switch (column.getTypeName().trim().toUpperCase(Locale.ROOT)) {
+                    case "INT":
+                    case "INTEGER":
+                    case "REAL":
+                    case "TEXT":
+                    case "BLOB":
+                    case "ANY":
+                        break;
+                    default:
+                        throw new IllegalArgumentException("type " + column.getTypeName() +
+                                " is not allowed on STRICT table: " + tableName + "." +
+                                column.name);
+                }
+            }
+        }
+    }
+
+    private void validateFullTexts() {
+        if (mFullTexts.length == 0) {
+            return;
+        }
+
+        if (mOptions.contains(Option.WITHOUT_ROWID)) {
+            throw new IllegalArgumentException(
+                    "full-text companion requires a rowid: " + tableName);
+        }
+
+        for (FullText fullText : mFullTexts) {
+            for (String key : fullText.getKeys()) {
+                if (findColumn(key.trim()) == null) {
+                    throw new IllegalArgumentException("no such column: " + tableName + "." +
+                            key.trim() + " in " + fullText.name);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the column that aliases the rowid, or null.
+     */
+    Column getRowIdColumn() {
+        final Column[] primaryKey = getPrimaryKey();
+        if (primaryKey.length == 1 &&
+                primaryKey[0].getTypeName().trim().equalsIgnoreCase("INTEGER") &&
+                !mOptions.contains(Option.WITHOUT_ROWID)) {
+            return primaryKey[0];
+        }
+
+        return null;
+    }
+
     protected static Attribute DEFAULT(Object value) {
-        return new Attribute("DEFAULT " + escapeString(value.toString()));
+        final String prefix = "DEFAULT ";
+        final String string = value.toString();
+        final StringBuilder builder = new StringBuilder(prefix.length() + string.length() + 8)
+                .append(prefix);
+
+        return new Attribute(appendQuoted(builder, string).toString());
     }
 
-    private static void join(StringBuilder builder, char delimiter, Object[] tokens) {
+    private static void join(StringBuilder builder, CharSequence delimiter, Object[] tokens) {
         boolean firstTime = true;
         for (Object attribute : tokens) {
             if (firstTime) {
@@ -91,38 +504,75 @@ public abstract class Table {
         }
     }
 
-    private static <T> T[] concat(T first, T[] rest) {
-        final int restLength = Objects.requireNonNull(rest).length;
-        final T[] result =
-                (T[]) Array.newInstance(Objects.requireNonNull(first).getClass(), restLength + 1);
+    private static Column[] concat(Column first, Column[] rest) {
+        final Column[] result = new Column[rest.length + 1];
         result[0] = first;
+        System.arraycopy(rest, 0, result, 1, rest.length);
 
-        if (0 < restLength) {
-            System.arraycopy(rest, 0, result, 1, restLength);
+        return result;
+    }
+
+    /**
+     * Appends {@code string} to {@code builder} as a single-quoted SQL string literal.
+     */
+    public static StringBuilder appendQuoted(StringBuilder builder, CharSequence string) {
+        try {
+            appendQuoted((Appendable) Objects.requireNonNull(builder), string);
+        } catch (IOException e) {
+            throw new AssertionError(e);
         }
 
-        return result;
+        return builder;
     }
 
-    private static CharSequence escapeString(String string) {
-        final StringBuilder builder =
-                new StringBuilder(Objects.requireNonNull(string).length() + 2);
-        builder.append('\'');
-        if (string.indexOf('\'') == -1) {
-            builder.append(string);
-        } else {
-            for (int i = 0, l = string.length(); i < l; i++) {
-                final char c = string.charAt(i);
-                if (c == '\'') {
-                    builder.append('\'');
-                }
+    /**
+     * Appends {@code string} to {@code appendable} as a single-quoted SQL string literal.
+     * Quote-free runs are appended as ranges of {@code string} in a single pass.
+     */
+    public static Appendable appendQuoted(Appendable appendable, CharSequence string)
+            throws IOException {
+        final int length = Objects.requireNonNull(string).length();
+        appendable.append('\'');
 
-                builder.append(c);
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (string.charAt(i) == '\'') {
+                appendable.append(string, start, i + 1).append('\'');
+                start = i + 1;
             }
         }
-        builder.append('\'');
 
-        return builder;
+        if (start == 0) {
+            appendable.append(string);
+        } else {
+            appendable.append(string, start, length);
+        }
+
+        return appendable.append('\'');
+    }
+
+    /**
+     * Table options appended to {@code CREATE TABLE}.
+     *
+     * @see <a href="https://www.sqlite.org/withoutrowid.html">WITHOUT ROWID</a>
+     * @see <a href="https://www.sqlite.org/stricttables.html">STRICT Tables</a>
+     */
+    public enum Option {
+        /**
+         * Requires a primary key and no AUTOINCREMENT.
+         */
+        WITHOUT_ROWID("WITHOUT ROWID"),
+
+        /**
+         * Requires SQLite 3.37.0 and column types of INT, INTEGER, REAL, TEXT, BLOB or ANY.
+         */
+        STRICT("STRICT");
+
+        final String sql;
+
+        Option(String sql) {
+            this.sql = sql;
+        }
     }
 
     public static class Column {
@@ -131,6 +581,9 @@ public abstract class Table {
         private final Type mType;
         private final Attribute[] mAttributes;
 
+        private String mStatement;
+        private AddSql mAddSql;
+
         public Column(String name, Type type, Attribute... attribute) {
             this.name = Objects.requireNonNull(name);
             mType = Objects.requireNonNull(type);
@@ -138,20 +591,118 @@ public abstract class Table {
         }
 
         public String createAddSql(String tableName) {
-            return "ALTER TABLE " + Objects.requireNonNull(tableName) + " ADD " + createStatement();
+            Objects.requireNonNull(tableName);
+            AddSql addSql = mAddSql;
+            if (addSql == null || !addSql.tableName.equals(tableName)) {
+                addSql = new AddSql(tableName, "ALTER TABLE " + tableName + " ADD " +
+                        createStatement());
+                mAddSql = addSql;
+            }
+
+            return addSql.sql;
+        }
+
+        String getTypeName() {
+            return mType.toString();
+        }
+
+        Type getType() {
+            return mType;
+        }
+
+        public Affinity getAffinity() {
+            return mType.affinity;
+        }
+
+        Attribute[] getAttributes() {
+            return mAttributes;
+        }
+
+        boolean hasAttribute(Attribute attribute) {
+            final String name = attribute.toString();
+            for (Attribute a : mAttributes) {
+                if (a.toString().equalsIgnoreCase(name)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        String getDefaultValue() {
+            final String prefix = "DEFAULT ";
+            for (Attribute attribute : mAttributes) {
+                final String value = attribute.toString();
+                if (value.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                    return value.substring(prefix.length());
+                }
+            }
+
+            return null;
+        }
+
+        boolean isConstraint() {
+            return false;
+        }
+
+        /**
+         * @return column names of a {@link PrimaryKey} or {@link Unique} constraint.
+         */
+        String[] getKeys() {
+            return mType instanceof BracketType ? ((BracketType) mType).mKeys : null;
         }
 
-        private CharSequence createStatement() {
+        String createStatementWithout(Attribute attribute) {
+            if (!hasAttribute(attribute)) {
+                return createStatement();
+            }
+
             final StringBuilder builder = new StringBuilder(name)
                     .append(' ')
                     .append(mType);
+            for (Attribute a : mAttributes) {
+                if (!a.toString().equalsIgnoreCase(attribute.toString())) {
+                    builder.append(' ').append(a);
+                }
+            }
+
+            return builder.toString();
+        }
+
+        String createStatement() {
+            String statement = mStatement;
+            if (statement == null) {
+                final String type = mType.toString();
+                int length = name.length() + 1 + type.length();
+                for (Attribute attribute : mAttributes) {
+                    length += 1 + attribute.toString().length();
+                }
+
+                final StringBuilder builder = new StringBuilder(length)
+                        .append(name)
+                        .append(' ')
+                        .append(type);
 
-            if (0 < mAttributes.length) {
-                builder.append(' ');
-                join(builder, ' ', mAttributes);
+                if (0 < mAttributes.length) {
+                    builder.append(' ');
+                    join(builder, " ", mAttributes);
+                }
+
+                statement = builder.toString();
+                mStatement = statement;
             }
 
-            return builder;
+            return statement;
+        }
+    }
+
+    private static class AddSql {
+        final String tableName;
+        final String sql;
+
+        AddSql(String tableName, String sql) {
+            this.tableName = tableName;
+            this.sql = sql;
         }
     }
 
@@ -159,9 +710,16 @@ public abstract class Table {
         public PrimaryKey(Object key, Object... rest) {
             super(PRIMARY_KEY.toString(), new BracketType(key, rest));
         }
+
+        @Override
+        boolean isConstraint() {
+            return true;
+        }
     }
 
     public static class ForeignKey extends Column {
+        private final Table mRefTable;
+
         public ForeignKey(Object key, Table refTable, Column refColumn) {
             super("FOREIGN KEY", new Type("" +
                     "(" +
@@ -172,6 +730,27 @@ public abstract class Table {
                     refColumn.name +
                     ")"
             ));
+            mRefTable = refTable;
+        }
+
+        /**
+         * @param definition the clause after {@code FOREIGN KEY}, as read from a live schema.
+         */
+        ForeignKey(String definition) {
+            super("FOREIGN KEY", new Type(definition));
+            mRefTable = null;
+        }
+
+        /**
+         * @return the referenced table, or null if this key was read from a live schema.
+         */
+        public Table getReferencedTable() {
+            return mRefTable;
+        }
+
+        @Override
+        boolean isConstraint() {
+            return true;
         }
     }
 
@@ -180,12 +759,275 @@ public abstract class Table {
             super(UNIQUE.toString(), new BracketType(key, rest));
         }
 
+        @Override
+        boolean isConstraint() {
+            return true;
+        }
+    }
+
+    /**
+     * Secondary index. Declared among the columns of a {@link Table} like the other
+     * constraints, rendered separately by {@link Table#createIndexSql()}.
+     * <p>
+     * Keys are column names, {@link Column}s or expressions such as {@code lower(name)}.
+     */
+    public static class Index extends Column {
+        private final boolean mUnique;
+        private final String mWhere;
+
+        /**
+         * {@code sqlite_master.sql} of an index read from a live schema, or null.
+         */
+        private final String mDefinition;
+
+        public Index(String indexName, Object key, Object... rest) {
+            this(indexName, new BracketType(key, rest), false, null);
+        }
+
+        /**
+         * @param definition {@code sqlite_master.sql} of a live index, rendered as is.
+         */
+        Index(String indexName, boolean unique, String definition) {
+            super(indexName, new Type(""));
+            mUnique = unique;
+            mWhere = null;
+            mDefinition = Objects.requireNonNull(definition);
+        }
+
+        private Index(String indexName, Type keys, boolean unique, String where) {
+            super(indexName, keys);
+            mUnique = unique;
+            mWhere = where;
+            mDefinition = null;
+        }
+
+        public Index unique() {
+            return new Index(name, getType(), true, mWhere);
+        }
+
+        /**
+         * @return a partial index on the rows matching {@code condition}.
+         */
+        public Index where(String condition) {
+            return new Index(name, getType(), mUnique, Objects.requireNonNull(condition));
+        }
+
+        public boolean isUnique() {
+            return mUnique;
+        }
+
+        public String createSql(String tableName) {
+            return render(tableName, true);
+        }
+
+        public String createDropSql() {
+            return "DROP INDEX IF EXISTS " + name;
+        }
+
+        /**
+         * @return the statement as SQLite keeps it in {@code sqlite_master.sql}.
+         */
+        String createDefinition(String tableName) {
+            return render(tableName, false);
+        }
+
+        private String render(String tableName, boolean ifNotExists) {
+            if (mDefinition != null) {
+                return ifNotExists ?
+                        mDefinition.replaceFirst("(?i)^(CREATE\\s+(UNIQUE\\s+)?INDEX)\\s+",
+                                "$1 IF NOT EXISTS ") :
+                        mDefinition;
+            }
+
+            final StringBuilder builder = new StringBuilder("CREATE ");
+            if (mUnique) {
+                builder.append("UNIQUE ");
+            }
+            builder.append("INDEX ");
+            if (ifNotExists) {
+                builder.append("IF NOT EXISTS ");
+            }
+            builder.append(name)
+                    .append(" ON ")
+                    .append(Objects.requireNonNull(tableName))
+                    .append(getTypeName());
+            if (mWhere != null) {
+                builder.append(" WHERE ").append(mWhere);
+            }
+
+            return builder.toString();
+        }
+    }
+
+    /**
+     * External-content full-text index of some TEXT columns, kept in sync by triggers.
+     * Declared among the columns of a {@link Table} like an {@link Index}, rendered separately
+     * by {@link Table#createFullTextSql()}. The table must have a rowid.
+     * <p>
+     * Search with {@code SELECT ... FROM table WHERE rowid IN (SELECT rowid FROM name WHERE
+     * name MATCH ?)}. FTS5 needs an SQLite built with it; Android only ships FTS3/FTS4, see
+     * {@link #fts4()}.
+     *
+     * @see <a href="https://www.sqlite.org/fts5.html#external_content_tables">External Content
+     * Tables</a>
+     */
+    public static class FullText extends Column {
+        private static final String[] TRIGGER_SUFFIXES =
+                {"_insert", "_delete", "_update_old", "_update"};
+
+        private final boolean mFts4;
+        private final String mTokenize;
+
+        /**
+         * @param name name of the virtual table.
+         */
+        public FullText(String name, Object key, Object... rest) {
+            this(name, new BracketType(key, rest), false, null);
+        }
+
+        private FullText(String name, Type keys, boolean fts4, String tokenize) {
+            super(name, keys);
+            mFts4 = fts4;
+            mTokenize = tokenize;
+        }
+
+        /**
+         * @return the same companion on FTS4 instead of FTS5.
+         */
+        public FullText fts4() {
+            return new FullText(name, getType(), true, mTokenize);
+        }
+
+        /**
+         * @param tokenizer e.g. {@code porter unicode61}.
+         */
+        public FullText tokenize(String tokenizer) {
+            return new FullText(name, getType(), mFts4, Objects.requireNonNull(tokenizer));
+        }
+
+        public boolean isFts4() {
+            return mFts4;
+        }
+
+        /**
+         * @return the virtual table followed by its sync triggers on {@code table}.
+         */
+        public List<String> createSql(Table table) {
+            return render(table, true);
+        }
+
+        /**
+         * @return the statement that re-indexes every row of the content table.
+         */
+        public String createRebuildSql() {
+            return "INSERT INTO " + name + "(" + name + ") VALUES('rebuild')";
+        }
+
+        /**
+         * @return statements dropping the triggers and the virtual table.
+         */
+        public List<String> createDropSql() {
+            return createDropSql(name);
+        }
+
+        static List<String> createDropSql(String name) {
+            final List<String> sql = new ArrayList<>(TRIGGER_SUFFIXES.length + 1);
+            for (String suffix : TRIGGER_SUFFIXES) {
+                sql.add("DROP TRIGGER IF EXISTS " + name + suffix);
+            }
+            sql.add("DROP TABLE IF EXISTS " + name);
+
+            return sql;
+        }
+
+        static String[] getTriggerNames(String name) {
+            final String[] names = new String[TRIGGER_SUFFIXES.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = name + TRIGGER_SUFFIXES[i];
+            }
+
+            return names;
+        }
+
+        /**
+         * @return the statements as SQLite keeps them in {@code sqlite_master.sql}, joined by
+         * newlines. see {@link TableInfo}.
+         */
+        String createDefinition(Table table) {
+            return String.join("\n", render(table, false));
+        }
+
+        private List<String> render(Table table, boolean ifNotExists) {
+            final String[] keys = getKeys();
+            final StringBuilder columns = new StringBuilder();
+            final StringBuilder newValues = new StringBuilder("new.rowid");
+            final StringBuilder oldValues = new StringBuilder("old.rowid");
+            for (String key : keys) {
+                final String column = key.trim();
+                columns.append(", ").append(column);
+                newValues.append(", new.").append(column);
+                oldValues.append(", old.").append(column);
+            }
+
+            final StringBuilder create = new StringBuilder("CREATE VIRTUAL TABLE ");
+            if (ifNotExists) {
+                create.append("IF NOT EXISTS ");
+            }
+            create.append(name)
+                    .append(" USING ")
+                    .append(mFts4 ? "fts4(" : "fts5(")
+                    .append(columns, 2, columns.length())
+                    .append(", content=");
+            appendQuoted(create, table.tableName);
+            if (mTokenize != null) {
+                create.append(", tokenize=");
+                if (mFts4) {
+                    create.append(mTokenize);
+                } else {
+                    appendQuoted(create, mTokenize);
+                }
+            }
+            create.append(')');
+
+            // an update of the rowid alias moves the row, so it re-indexes too.
+            final Column rowId = table.getRowIdColumn();
+            final String updateOf = " UPDATE OF " + columns.substring(2) +
+                    (rowId == null ? "" : ", " + rowId.name) + " ON " + table.tableName;
+            final String insert = "INSERT INTO " + name + "(" + (mFts4 ? "docid" : "rowid") +
+                    columns + ") VALUES (" + newValues + ");";
+            final String delete = mFts4 ?
+                    "DELETE FROM " + name + " WHERE docid = old.rowid;" :
+                    "INSERT INTO " + name + "(" + name + ", rowid" + columns +
+                            ") VALUES ('delete', " + oldValues + ");";
+
+            final String[] triggerNames = getTriggerNames(name);
+            final String prefix = ifNotExists ? "CREATE TRIGGER IF NOT EXISTS " :
+                    "CREATE TRIGGER ";
+            final List<String> sql = new ArrayList<>(5);
+            sql.add(create.toString());
+            sql.add(prefix + triggerNames[0] + " AFTER INSERT ON " + table.tableName +
+                    " BEGIN " + insert + " END");
+            // FTS4 reads the old values from the content table, so it deletes before.
+            sql.add(prefix + triggerNames[1] + (mFts4 ? " BEFORE" : " AFTER") +
+                    " DELETE ON " + table.tableName + " BEGIN " + delete + " END");
+            if (mFts4) {
+                sql.add(prefix + triggerNames[2] + " BEFORE" + updateOf + " BEGIN " +
+                        delete + " END");
+                sql.add(prefix + triggerNames[3] + " AFTER" + updateOf + " BEGIN " +
+                        insert + " END");
+            } else {
+                sql.add(prefix + triggerNames[3] + " AFTER" + updateOf + " BEGIN " +
+                        delete + " " + insert + " END");
+            }
+
+            return sql;
+        }
     }
 
     protected static class Attribute {
         private final String mAttribute;
 
-        private Attribute(String attribute) {
+        Attribute(String attribute) {
             mAttribute = Objects.requireNonNull(attribute);
         }
 
@@ -195,11 +1037,14 @@ public abstract class Table {
         }
     }
 
-    private static class Type {
+    static class Type {
+        final Affinity affinity;
+
         private final String mName;
 
-        private Type(String name) {
+        Type(String name) {
             mName = Objects.requireNonNull(name);
+            affinity = Affinity.of(name);
         }
 
         @Override
@@ -209,13 +1054,34 @@ public abstract class Table {
     }
 
     private static class BracketType extends Type {
+        private final String[] mKeys;
+
         BracketType(Object key, Object... rest) {
-            super(createType(key, rest));
+            this(toStrings(key, rest));
+        }
+
+        private BracketType(String[] keys) {
+            super(createType(keys));
+            mKeys = keys;
+        }
+
+        private static String[] toStrings(Object key, Object[] rest) {
+            final String[] strings = new String[rest.length + 1];
+            strings[0] = toString(Objects.requireNonNull(key));
+            for (int i = 0; i < rest.length; i++) {
+                strings[i + 1] = toString(rest[i]);
+            }
+
+            return strings;
+        }
+
+        private static String toString(Object key) {
+            return key instanceof Column ? ((Column) key).name : key.toString();
         }
 
-        private static String createType(Object key, Object... rest) {
+        private static String createType(String[] keys) {
             final StringBuilder builder = new StringBuilder("(");
-            join(builder, ',', concat(key, rest));
+            join(builder, ",", keys);
 
             return builder.append(")").toString();
         }
@@ -0,0 +1,490 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Columnar binary dump of a {@link Table}'s rows, for backups and transfer between devices.
+ * <p>
+ * The file starts with {@link #MAGIC}, a format version and the {@link Table#createSql()} of
+ * the dumped table, followed by blocks of up to {@code blockSize} rows and a 0 row count:
+ * <pre>
+ * file   = magic version:u8 sql:text columns:varint block* 0:varint
+ * block  = rows:varint chunk*                one chunk per column
+ * chunk  = class:u8 nulls:bitmap values      every non-null value has the same class
+ *        | 0:u8 classes:u8[rows] values      mixed storage classes
+ * values = integers, reals, texts, blobs     each in row order, only the present classes
+ * </pre>
+ * Values keep their SQLite storage class. Integers are zigzag varints of the delta from the
+ * previous integer of the chunk, reals are 8-byte IEEE 754, texts are a dictionary of
+ * length-prefixed UTF-8 strings followed by one varint id per value, and blobs are
+ * length-prefixed. Varints are unsigned LEB128.
+ */
+public final class TableArchive {
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    static final byte[] MAGIC = {'T', 'T', 'B', 'L'};
+    static final int VERSION = 1;
+
+    private static final byte CLASS_MIXED = 0;
+    private static final byte CLASS_NULL = 0;
+    private static final byte CLASS_INTEGER = 1;
+    private static final byte CLASS_REAL = 2;
+    private static final byte CLASS_TEXT = 3;
+    private static final byte CLASS_BLOB = 4;
+
+    private TableArchive() {
+    }
+
+    /**
+     * Writes every row of {@code table} to {@code channel}.
+     *
+     * @return the number of rows written.
+     */
+    public static long exportTo(RowSource source, Table table, WritableByteChannel channel)
+            throws IOException {
+        return exportTo(source, table, channel, DEFAULT_BLOCK_SIZE);
+    }
+
+    public static long exportTo(RowSource source, Table table, WritableByteChannel channel,
+            int blockSize) throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize: " + blockSize);
+        }
+        Objects.requireNonNull(channel);
+
+        final Table.Column[] columns = table.getStatements().getColumns();
+        final StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i != 0) {
+                sql.append(", ");
+            }
+            sql.append(columns[i].name).append(", typeof(").append(columns[i].name).append(')');
+        }
+        sql.append(" FROM ").append(table.tableName);
+
+        final Sink sink = new Sink();
+        sink.writeBytes(MAGIC, 0, MAGIC.length);
+        sink.writeByte(VERSION);
+        sink.writeText(table.createSql());
+        sink.writeVarint(columns.length);
+
+        final Block block = new Block(columns.length, blockSize);
+        long rowCount = 0;
+        try (RowCursor c = source.query(sql.toString())) {
+            while (true) {
+                block.rows = 0;
+                while (block.rows < blockSize && c.moveToNext()) {
+                    block.readRow(c);
+                }
+                if (block.rows == 0) {
+                    break;
+                }
+
+                block.encode(sink);
+                sink.drainTo(channel);
+                rowCount += block.rows;
+            }
+        }
+
+        sink.writeVarint(0);
+        sink.drainTo(channel);
+        return rowCount;
+    }
+
+    /**
+     * Inserts the rows of a file written by {@link #exportTo} into {@code table} through a
+     * {@link RowBinder} of {@code batchSize} rows. The file is memory-mapped, so it must be
+     * smaller than 2 GiB.
+     *
+     * @return the number of rows read.
+     * @throws IOException if the file is not an archive of {@code table}.
+     */
+    public static long importFrom(FileChannel channel, SqlExecutor executor, Table table,
+            int batchSize) throws IOException {
+        final long size = channel.size();
+        if (Integer.MAX_VALUE < size) {
+            throw new IOException("too large to map: " + size);
+        }
+
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        final byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || buffer.get() != VERSION) {
+            throw new IOException("not a table archive");
+        }
+
+        final String sql = readText(buffer);
+        final Table.Column[] columns = table.getStatements().getColumns();
+        if (!sql.equals(table.createSql()) || readVarint(buffer) != columns.length) {
+            throw new IOException("archive of a different table: " + sql);
+        }
+
+        long rowCount = 0;
+        try (RowBinder binder = new RowBinder(executor, table, batchSize)) {
+            Block block = null;
+            int rows;
+            while ((rows = (int) readVarint(buffer)) != 0) {
+                if (block == null || block.capacity < rows) {
+                    block = new Block(columns.length, rows);
+                }
+                block.rows = rows;
+                block.decode(buffer);
+
+                for (int row = 0; row < rows; row++) {
+                    block.bindRow(binder, columns, row);
+                    binder.endRow();
+                }
+                rowCount += rows;
+            }
+        }
+
+        return rowCount;
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (0 <= b) {
+                return value;
+            }
+        }
+    }
+
+    private static String readText(ByteBuffer buffer) {
+        final byte[] bytes = new byte[(int) readVarint(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One block of rows, column by column.
+     */
+    private static final class Block {
+        final int capacity;
+        final byte[][] classes;
+        final long[][] longs;
+        final double[][] doubles;
+        final Object[][] objects;
+        int rows;
+
+        private final Map<String, Integer> mDictionary = new HashMap<>();
+        private final List<String> mDictionaryEntries = new ArrayList<>();
+
+        Block(int columnCount, int capacity) {
+            this.capacity = capacity;
+            classes = new byte[columnCount][capacity];
+            longs = new long[columnCount][capacity];
+            doubles = new double[columnCount][capacity];
+            objects = new Object[columnCount][capacity];
+        }
+
+        void readRow(RowCursor c) {
+            for (int column = 0; column < classes.length; column++) {
+                final int index = column * 2;
+                final byte storageClass = toStorageClass(c.getString(index + 1));
+                classes[column][rows] = storageClass;
+                switch (storageClass) {
+                    case CLASS_INTEGER:
+                        longs[column][rows] = c.getLong(index);
+                        break;
+                    case CLASS_REAL:
+                        doubles[column][rows] = c.getDouble(index);
+                        break;
+                    case CLASS_TEXT:
+                        objects[column][rows] = c.getString(index);
+                        break;
+                    case CLASS_BLOB:
+                        objects[column][rows] = c.getBlob(index);
+                        break;
+                    default:
+                        objects[column][rows] = null;
+                        break;
+                }
+            }
+            rows++;
+        }
+
+        void encode(Sink sink) {
+            sink.writeVarint(rows);
+            for (int column = 0; column < classes.length; column++) {
+                final byte[] rowClasses = classes[column];
+                byte chunkClass = CLASS_NULL;
+                boolean mixed = false;
+                for (int row = 0; row < rows; row++) {
+                    if (rowClasses[row] == CLASS_NULL) {
+                        continue;
+                    }
+                    if (chunkClass == CLASS_NULL) {
+                        chunkClass = rowClasses[row];
+                    } else if (chunkClass != rowClasses[row]) {
+                        mixed = true;
+                        break;
+                    }
+                }
+
+                if (mixed) {
+                    sink.writeByte(CLASS_MIXED);
+                    sink.writeBytes(rowClasses, 0, rows);
+                } else {
+                    // an all-NULL chunk is written as INTEGER without values.
+                    sink.writeByte(chunkClass == CLASS_NULL ? CLASS_INTEGER : chunkClass);
+                    for (int offset = 0; offset < rows; offset += 8) {
+                        int bits = 0;
+                        for (int bit = 0; bit < 8 && offset + bit < rows; bit++) {
+                            if (rowClasses[offset + bit] == CLASS_NULL) {
+                                bits |= 1 << bit;
+                            }
+                        }
+                        sink.writeByte(bits);
+                    }
+                }
+
+                encodeIntegers(sink, column);
+                encodeReals(sink, column);
+                encodeTexts(sink, column);
+                encodeBlobs(sink, column);
+            }
+        }
+
+        void decode(ByteBuffer buffer) {
+            for (int column = 0; column < classes.length; column++) {
+                final byte[] rowClasses = classes[column];
+                final byte chunkClass = buffer.get();
+                if (chunkClass == CLASS_MIXED) {
+                    buffer.get(rowClasses, 0, rows);
+                } else {
+                    for (int offset = 0; offset < rows; offset += 8) {
+                        final int bits = buffer.get();
+                        for (int bit = 0; bit < 8 && offset + bit < rows; bit++) {
+                            rowClasses[offset + bit] =
+                                    (bits & (1 << bit)) != 0 ? CLASS_NULL : chunkClass;
+                        }
+                    }
+                }
+
+                long previous = 0;
+                for (int row = 0; row < rows; row++) {
+                    if (rowClasses[row] == CLASS_INTEGER) {
+                        final long delta = readVarint(buffer);
+                        previous += (delta >>> 1) ^ -(delta & 1);
+                        longs[column][row] = previous;
+                    }
+                }
+
+                for (int row = 0; row < rows; row++) {
+                    if (rowClasses[row] == CLASS_REAL) {
+                        doubles[column][row] = buffer.getDouble();
+                    }
+                }
+
+                if (contains(rowClasses, CLASS_TEXT)) {
+                    final String[] dictionary = new String[(int) readVarint(buffer)];
+                    for (int i = 0; i < dictionary.length; i++) {
+                        dictionary[i] = readText(buffer);
+                    }
+                    for (int row = 0; row < rows; row++) {
+                        if (rowClasses[row] == CLASS_TEXT) {
+                            objects[column][row] = dictionary[(int) readVarint(buffer)];
+                        }
+                    }
+                }
+
+                for (int row = 0; row < rows; row++) {
+                    if (rowClasses[row] == CLASS_BLOB) {
+                        final byte[] blob = new byte[(int) readVarint(buffer)];
+                        buffer.get(blob);
+                        objects[column][row] = blob;
+                    }
+                }
+            }
+        }
+
+        void bindRow(RowBinder binder, Table.Column[] columns, int row) {
+            for (int column = 0; column < columns.length; column++) {
+                switch (classes[column][row]) {
+                    case CLASS_INTEGER:
+                        binder.bindLong(columns[column], longs[column][row]);
+                        break;
+                    case CLASS_REAL:
+                        binder.bindDouble(columns[column], doubles[column][row]);
+                        break;
+                    case CLASS_TEXT:
+                        binder.bindText(columns[column], (String) objects[column][row]);
+                        break;
+                    case CLASS_BLOB:
+                        binder.bindBlob(columns[column], (byte[]) objects[column][row]);
+                        break;
+                    default:
+                        binder.bindNull(columns[column]);
+                        break;
+                }
+            }
+        }
+
+        private void encodeIntegers(Sink sink, int column) {
+            long previous = 0;
+            for (int row = 0; row < rows; row++) {
+                if (classes[column][row] == CLASS_INTEGER) {
+                    final long delta = longs[column][row] - previous;
+                    sink.writeVarint((delta << 1) ^ (delta >> 63));
+                    previous = longs[column][row];
+                }
+            }
+        }
+
+        private void encodeReals(Sink sink, int column) {
+            for (int row = 0; row < rows; row++) {
+                if (classes[column][row] == CLASS_REAL) {
+                    sink.writeLong(Double.doubleToRawLongBits(doubles[column][row]));
+                }
+            }
+        }
+
+        private void encodeTexts(Sink sink, int column) {
+            if (!contains(classes[column], CLASS_TEXT)) {
+                return;
+            }
+
+            mDictionary.clear();
+            mDictionaryEntries.clear();
+            for (int row = 0; row < rows; row++) {
+                if (classes[column][row] == CLASS_TEXT) {
+                    final String text = (String) objects[column][row];
+                    if (!mDictionary.containsKey(text)) {
+                        mDictionary.put(text, mDictionaryEntries.size());
+                        mDictionaryEntries.add(text);
+                    }
+                }
+            }
+
+            sink.writeVarint(mDictionaryEntries.size());
+            for (String text : mDictionaryEntries) {
+                sink.writeText(text);
+            }
+            for (int row = 0; row < rows; row++) {
+                if (classes[column][row] == CLASS_TEXT) {
+                    sink.writeVarint(mDictionary.get(objects[column][row]));
+                }
+            }
+        }
+
+        private void encodeBlobs(Sink sink, int column) {
+            for (int row = 0; row < rows; row++) {
+                if (classes[column][row] == CLASS_BLOB) {
+                    final byte[] blob = (byte[]) objects[column][row];
+                    sink.writeVarint(blob.length);
+                    sink.writeBytes(blob, 0, blob.length);
+                }
+            }
+        }
+
+        private boolean contains(byte[] rowClasses, byte storageClass) {
+            for (int row = 0; row < rows; row++) {
+                if (rowClasses[row] == storageClass) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private static byte toStorageClass(String typeOf) {
+            switch (typeOf) {
+                case "integer":
+                    return CLASS_INTEGER;
+                case "real":
+                    return CLASS_REAL;
+                case "text":
+                    return CLASS_TEXT;
+                case "blob":
+                    return CLASS_BLOB;
+                default:
+                    return CLASS_NULL;
+            }
+        }
+    }
+
+    /**
+     * Growable write buffer, drained to the channel once per block.
+     */
+    private static final class Sink {
+        private byte[] mBytes = new byte[8192];
+        private int mSize;
+
+        void writeByte(int b) {
+            ensure(1);
+            mBytes[mSize++] = (byte) b;
+        }
+
+        void writeBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, mBytes, mSize, length);
+            mSize += length;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                mBytes[mSize++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBytes[mSize++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; 0 <= shift; shift -= 8) {
+                mBytes[mSize++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeText(String text) {
+            final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        void drainTo(WritableByteChannel channel) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(mBytes, 0, mSize);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            mSize = 0;
+        }
+
+        private void ensure(int length) {
+            if (mBytes.length < mSize + length) {
+                mBytes = Arrays.copyOf(mBytes, Math.max(mBytes.length * 2, mSize + length));
+            }
+        }
+    }
+}
@@ -0,0 +1,634 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Schema of a live table as reported by {@code PRAGMA table_info}, {@code index_list} and
+ * {@code foreign_key_list}, plus its {@link Table.Option}s, AUTOINCREMENT and the
+ * {@code sqlite_master} definitions of its secondary indexes and {@link Table.FullText}
+ * companions. No user data is read.
+ */
+public final class TableInfo {
+    private static final Pattern AUTOINCREMENT =
+            Pattern.compile("\\bAUTOINCREMENT\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern REFERENCES =
+            Pattern.compile("\\bREFERENCES\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+    public final String tableName;
+
+    private final Set<Table.Option> mOptions;
+    private final List<ColumnInfo> mColumns;
+    private final List<IndexInfo> mIndexes;
+    private final List<ForeignKeyInfo> mForeignKeys;
+
+    /**
+     * Companion name to the {@code sqlite_master.sql} of its virtual table and triggers.
+     */
+    private final Map<String, String> mFullTexts;
+
+    private TableInfo(String tableName, Set<Table.Option> options, List<ColumnInfo> columns,
+            List<IndexInfo> indexes, List<ForeignKeyInfo> foreignKeys,
+            Map<String, String> fullTexts) {
+        this.tableName = tableName;
+        mOptions = Collections.unmodifiableSet(options);
+        mColumns = Collections.unmodifiableList(columns);
+        mIndexes = Collections.unmodifiableList(indexes);
+        mForeignKeys = Collections.unmodifiableList(foreignKeys);
+        mFullTexts = Collections.unmodifiableMap(fullTexts);
+    }
+
+    /**
+     * @return the schema of {@code tableName}, or null if the table does not exist.
+     */
+    public static TableInfo read(RowSource source, String tableName) {
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(tableName);
+
+        // one scan of sqlite_master for the table, its indexes and triggers, and the virtual
+        // tables that may be its full-text companions.
+        String createSql = null;
+        boolean hasIndexes = false;
+        final Map<String, String> indexSql = new HashMap<>();
+        final Map<String, String> virtualTables = new HashMap<>();
+        final Map<String, String> triggers = new HashMap<>();
+        try (RowCursor c = source.query("SELECT type, name, sql FROM sqlite_master " +
+                "WHERE tbl_name = ? OR (type = 'table' AND sql LIKE 'CREATE VIRTUAL TABLE %')",
+                tableName)) {
+            while (c.moveToNext()) {
+                final String type = c.getString(0);
+                final String name = c.getString(1);
+                final String sql = c.isNull(2) ? null : c.getString(2);
+                if ("index".equals(type)) {
+                    hasIndexes = true;
+                    if (sql != null) {
+                        indexSql.put(name, sql);
+                    }
+                } else if ("trigger".equals(type)) {
+                    triggers.put(name, sql);
+                } else if (name.equals(tableName)) {
+                    createSql = sql;
+                } else if (sql != null) {
+                    virtualTables.put(name, sql);
+                }
+            }
+        }
+
+        final Set<Table.Option> options = EnumSet.noneOf(Table.Option.class);
+        boolean autoincrement = false;
+        boolean hasForeignKeys = true;
+        if (createSql != null) {
+            readOptions(createSql, options);
+            final String code = STRING_LITERAL.matcher(createSql).replaceAll("''");
+            autoincrement = AUTOINCREMENT.matcher(code).find();
+            hasForeignKeys = REFERENCES.matcher(code).find();
+        }
+
+        final List<ColumnInfo> columns = new ArrayList<>();
+        try (RowCursor c = source.query(pragma("table_info", tableName))) {
+            final int name = c.getColumnIndex("name");
+            final int type = c.getColumnIndex("type");
+            final int notNull = c.getColumnIndex("notnull");
+            final int defaultValue = c.getColumnIndex("dflt_value");
+            final int pk = c.getColumnIndex("pk");
+            while (c.moveToNext()) {
+                final int primaryKeyIndex = (int) c.getLong(pk);
+                columns.add(new ColumnInfo(
+                        c.getString(name),
+                        c.isNull(type) ? "" : c.getString(type),
+                        c.getLong(notNull) != 0,
+                        c.isNull(defaultValue) ? null : c.getString(defaultValue),
+                        primaryKeyIndex,
+                        // only allowed on the INTEGER PRIMARY KEY.
+                        autoincrement && 0 < primaryKeyIndex));
+            }
+        }
+
+        if (columns.isEmpty()) {
+            return null;
+        }
+
+        final List<IndexInfo> indexes = new ArrayList<>();
+        // a name that only differs in case is missed by sqlite_master but not by the pragmas.
+        if (hasIndexes || createSql == null) {
+            readIndexes(source, tableName, indexes);
+        }
+
+        for (int i = 0; i < indexes.size(); i++) {
+            final IndexInfo index = indexes.get(i);
+            if (isUniqueConstraint(index, tableName)) {
+                indexes.set(i, index.with(readIndexColumns(source, index.name), null));
+            } else if (IndexInfo.ORIGIN_CREATE_INDEX.equals(index.origin)) {
+                indexes.set(i, index.with(readIndexColumns(source, index.name),
+                        unquoteTableName(indexSql.get(index.name), tableName)));
+            }
+        }
+
+        return new TableInfo(tableName, options, columns, indexes,
+                hasForeignKeys ?
+                        readForeignKeys(source, tableName) :
+                        Collections.emptyList(),
+                readFullTexts(tableName, virtualTables, triggers));
+    }
+
+    private static void readIndexes(RowSource source, String tableName,
+            List<IndexInfo> indexes) {
+        try (RowCursor c = source.query(pragma("index_list", tableName))) {
+            final int name = c.getColumnIndex("name");
+            final int unique = c.getColumnIndex("unique");
+            final int origin = c.getColumnIndex("origin");
+            final int partial = c.getColumnIndex("partial");
+            while (c.moveToNext()) {
+                final String indexName = c.getString(name);
+                indexes.add(new IndexInfo(
+                        indexName,
+                        c.getLong(unique) != 0,
+                        origin == -1 ? guessOrigin(indexName) : c.getString(origin),
+                        partial != -1 && c.getLong(partial) != 0));
+            }
+        }
+    }
+
+    public Set<Table.Option> getOptions() {
+        return mOptions;
+    }
+
+    public List<ColumnInfo> getColumns() {
+        return mColumns;
+    }
+
+    public List<IndexInfo> getIndexes() {
+        return mIndexes;
+    }
+
+    public List<ForeignKeyInfo> getForeignKeys() {
+        return mForeignKeys;
+    }
+
+    public List<String> getColumnNames() {
+        final List<String> names = new ArrayList<>(mColumns.size());
+        for (ColumnInfo column : mColumns) {
+            names.add(column.name);
+        }
+
+        return names;
+    }
+
+    /**
+     * @return names of the {@link Table.FullText} companions whose content is this table.
+     */
+    public Set<String> getFullTextNames() {
+        return mFullTexts.keySet();
+    }
+
+    /**
+     * @return the virtual table and trigger statements of companion {@code name}, joined by
+     * newlines, or null.
+     */
+    String getFullTextDefinition(String name) {
+        for (Map.Entry<String, String> entry : mFullTexts.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return a {@link Table} equivalent to this schema, to be passed to
+     * {@link SchemaDiff#compare(Table, Table)}.
+     */
+    public Table toTable() {
+        return toTable(null);
+    }
+
+    /**
+     * @return {@link #toTable()} without {@code columnName} and the UNIQUE constraints,
+     * foreign keys and indexes over it. an index is over the column if it is a key, or if
+     * its key expressions or WHERE clause mention it.
+     * @throws IllegalArgumentException if the column is missing, is part of the primary key or
+     *                                  is the only column.
+     */
+    Table toTableWithout(String columnName) {
+        Objects.requireNonNull(columnName);
+        for (ColumnInfo column : mColumns) {
+            if (column.name.equalsIgnoreCase(columnName)) {
+                if (0 < column.primaryKeyIndex || mColumns.size() == 1) {
+                    throw new IllegalArgumentException("cannot drop " + tableName + "." +
+                            columnName);
+                }
+                return toTable(columnName);
+            }
+        }
+
+        throw new IllegalArgumentException("no such column: " + tableName + "." + columnName);
+    }
+
+    private Table toTable(String droppedColumnName) {
+        final List<ColumnInfo> primaryKey = new ArrayList<>();
+        for (ColumnInfo column : mColumns) {
+            if (0 < column.primaryKeyIndex) {
+                primaryKey.add(column);
+            }
+        }
+        Collections.sort(primaryKey, (l, r) -> l.primaryKeyIndex - r.primaryKeyIndex);
+
+        final List<Table.Column> columns = new ArrayList<>();
+        for (ColumnInfo column : mColumns) {
+            if (column.name.equalsIgnoreCase(droppedColumnName)) {
+                continue;
+            }
+
+            final List<Table.Attribute> attributes = new ArrayList<>();
+            if (primaryKey.size() == 1 && 0 < column.primaryKeyIndex) {
+                attributes.add(Table.PRIMARY_KEY);
+            }
+            if (column.autoincrement) {
+                attributes.add(Table.AUTOINCREMENT);
+            }
+            if (column.notNull) {
+                attributes.add(Table.NOT_NULL);
+            }
+            if (column.defaultValue != null) {
+                attributes.add(new Table.Attribute("DEFAULT " + column.defaultValue));
+            }
+
+            columns.add(new Table.Column(column.name, new Table.Type(column.type),
+                    attributes.toArray(new Table.Attribute[attributes.size()])));
+        }
+
+        if (1 < primaryKey.size()) {
+            final String[] keys = new String[primaryKey.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = primaryKey.get(i).name;
+            }
+            columns.add(new Table.PrimaryKey(keys[0], (Object[]) rest(keys)));
+        }
+
+        for (ForeignKeyInfo foreignKey : mForeignKeys) {
+            if (droppedColumnName == null ||
+                    !containsIgnoreCase(foreignKey.getColumnNames(), droppedColumnName)) {
+                columns.add(new Table.ForeignKey(foreignKey.createDefinition()));
+            }
+        }
+
+        final Pattern dropped = droppedColumnName == null ?
+                null :
+                Pattern.compile("\\b" + Pattern.quote(droppedColumnName) + "\\b",
+                        Pattern.CASE_INSENSITIVE);
+        for (IndexInfo index : mIndexes) {
+            if (dropped != null && (containsIgnoreCase(index.getColumnNames(),
+                    droppedColumnName) || (index.sql != null &&
+                    dropped.matcher(index.sql.substring(index.sql.indexOf('('))).find()))) {
+                continue;
+            }
+
+            if (isUniqueConstraint(index, tableName)) {
+                final String[] keys = index.getColumnNames().toArray(new String[0]);
+                columns.add(new Table.Unique(keys[0], (Object[]) rest(keys)));
+            } else if (index.sql != null) {
+                columns.add(new Table.Index(index.name, index.unique, index.sql));
+            }
+        }
+
+        return new IntrospectedTable(tableName, mOptions, columns, mFullTexts);
+    }
+
+    /**
+     * @return true if the live schema already is {@code table}.
+     */
+    public boolean matches(Table table) {
+        return SchemaDiff.compare(toTable(), table).isEmpty();
+    }
+
+    private static List<String> readIndexColumns(RowSource source, String indexName) {
+        final List<String> names = new ArrayList<>();
+        try (RowCursor c = source.query(pragma("index_info", indexName))) {
+            final int name = c.getColumnIndex("name");
+            while (c.moveToNext()) {
+                names.add(c.getString(name));
+            }
+        }
+
+        return names;
+    }
+
+    private static List<ForeignKeyInfo> readForeignKeys(RowSource source, String tableName) {
+        // foreign_key_list lists the columns of a key by seq, keys in reverse id order.
+        final Map<Long, ForeignKeyInfo> foreignKeys = new TreeMap<>();
+        try (RowCursor c = source.query(pragma("foreign_key_list", tableName))) {
+            final int id = c.getColumnIndex("id");
+            final int table = c.getColumnIndex("table");
+            final int from = c.getColumnIndex("from");
+            final int to = c.getColumnIndex("to");
+            final int onUpdate = c.getColumnIndex("on_update");
+            final int onDelete = c.getColumnIndex("on_delete");
+            while (c.moveToNext()) {
+                ForeignKeyInfo foreignKey = foreignKeys.get(c.getLong(id));
+                if (foreignKey == null) {
+                    foreignKey = new ForeignKeyInfo(c.getString(table),
+                            onUpdate == -1 ? null : c.getString(onUpdate),
+                            onDelete == -1 ? null : c.getString(onDelete));
+                    foreignKeys.put(c.getLong(id), foreignKey);
+                }
+                foreignKey.mColumnNames.add(c.getString(from));
+                if (!c.isNull(to)) {
+                    foreignKey.mReferencedColumnNames.add(c.getString(to));
+                }
+            }
+        }
+
+        final List<ForeignKeyInfo> list = new ArrayList<>(foreignKeys.values());
+        Collections.reverse(list);
+        return list;
+    }
+
+    /**
+     * @return the {@link Table.FullText} companions whose content is {@code tableName}, each
+     * mapped to its virtual table statement followed by its sync triggers, see
+     * {@link Table.FullText#createDefinition(Table)}.
+     *
+     * @param virtualTables every virtual table of the database, name to statement.
+     * @param triggers      the triggers of {@code tableName}, name to statement.
+     */
+    private static Map<String, String> readFullTexts(String tableName,
+            Map<String, String> virtualTables, Map<String, String> triggers) {
+        final String content = Table.appendQuoted(new StringBuilder("content="), tableName)
+                .toString();
+        final Map<String, String> fullTexts = new HashMap<>();
+        for (Map.Entry<String, String> entry : virtualTables.entrySet()) {
+            if (entry.getValue().contains(content)) {
+                fullTexts.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (Map.Entry<String, String> entry : fullTexts.entrySet()) {
+            final StringBuilder definition = new StringBuilder(entry.getValue());
+            for (String triggerName : Table.FullText.getTriggerNames(entry.getKey())) {
+                final String sql = triggers.get(triggerName);
+                if (sql != null) {
+                    definition.append('\n').append(sql);
+                }
+            }
+            entry.setValue(definition.toString());
+        }
+
+        return fullTexts;
+    }
+
+    /**
+     * Reads the table options that follow the closing parenthesis of {@code createSql}.
+     */
+    private static void readOptions(String createSql, Set<Table.Option> options) {
+        final String tail = createSql.substring(createSql.lastIndexOf(')') + 1);
+        for (String token : tail.split(",")) {
+            final String option = token.trim().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+            for (Table.Option o : Table.Option.values()) {
+                if (o.sql.equals(option)) {
+                    options.add(o);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@code ALTER TABLE ... RENAME} rewrites the index definitions with a quoted table name;
+     * restores {@code ON tableName(} so they compare equal to {@link Table.Index}.
+     */
+    private static String unquoteTableName(String sql, String tableName) {
+        if (sql == null) {
+            return null;
+        }
+
+        final String quoted = " ON \"" + tableName + "\"(";
+        final int index = sql.indexOf(quoted);
+        return index == -1 ?
+                sql :
+                sql.substring(0, index) + " ON " + tableName + "(" +
+                        sql.substring(index + quoted.length());
+    }
+
+    private static String pragma(String pragma, String argument) {
+        final StringBuilder builder = new StringBuilder("PRAGMA ")
+                .append(pragma)
+                .append('(');
+
+        return Table.appendQuoted(builder, argument).append(')').toString();
+    }
+
+    /**
+     * @return true for UNIQUE constraints, including those built as unique indexes by
+     * {@link Table#createDeferredIndexSql()}.
+     */
+    private static boolean isUniqueConstraint(IndexInfo index, String tableName) {
+        return IndexInfo.ORIGIN_UNIQUE.equals(index.origin) ||
+                (index.unique && !index.partial &&
+                        index.name.startsWith(Table.UNIQUE_INDEX_PREFIX + tableName + "_"));
+    }
+
+    private static String guessOrigin(String indexName) {
+        return indexName.startsWith("sqlite_autoindex_") ?
+                IndexInfo.ORIGIN_UNIQUE :
+                IndexInfo.ORIGIN_CREATE_INDEX;
+    }
+
+    private static boolean containsIgnoreCase(List<String> names, String name) {
+        for (String candidate : names) {
+            if (name.equalsIgnoreCase(candidate)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String[] rest(String[] keys) {
+        final String[] rest = new String[keys.length - 1];
+        System.arraycopy(keys, 1, rest, 0, rest.length);
+
+        return rest;
+    }
+
+    public static final class ColumnInfo {
+        public final String name;
+        public final String type;
+        public final boolean notNull;
+
+        /**
+         * SQL text of the default value, e.g. {@code 'def'}, or null.
+         */
+        public final String defaultValue;
+
+        /**
+         * 1-based position in the primary key, or 0.
+         */
+        public final int primaryKeyIndex;
+
+        public final boolean autoincrement;
+
+        ColumnInfo(String name, String type, boolean notNull, String defaultValue,
+                int primaryKeyIndex, boolean autoincrement) {
+            this.name = Objects.requireNonNull(name);
+            this.type = Objects.requireNonNull(type);
+            this.notNull = notNull;
+            this.defaultValue = defaultValue;
+            this.primaryKeyIndex = primaryKeyIndex;
+            this.autoincrement = autoincrement;
+        }
+    }
+
+    public static final class ForeignKeyInfo {
+        private static final String NO_ACTION = "NO ACTION";
+
+        public final String table;
+
+        /**
+         * {@code ON UPDATE} action, e.g. {@code CASCADE}, or {@code NO ACTION}.
+         */
+        public final String onUpdate;
+
+        /**
+         * {@code ON DELETE} action, e.g. {@code CASCADE}, or {@code NO ACTION}.
+         */
+        public final String onDelete;
+
+        private final List<String> mColumnNames = new ArrayList<>();
+        private final List<String> mReferencedColumnNames = new ArrayList<>();
+
+        ForeignKeyInfo(String table, String onUpdate, String onDelete) {
+            this.table = Objects.requireNonNull(table);
+            this.onUpdate = onUpdate == null ? NO_ACTION : onUpdate;
+            this.onDelete = onDelete == null ? NO_ACTION : onDelete;
+        }
+
+        public List<String> getColumnNames() {
+            return Collections.unmodifiableList(mColumnNames);
+        }
+
+        /**
+         * @return referenced column names, or empty if the key references the primary key of
+         * {@link #table} implicitly.
+         */
+        public List<String> getReferencedColumnNames() {
+            return Collections.unmodifiableList(mReferencedColumnNames);
+        }
+
+        /**
+         * @return the clause after {@code FOREIGN KEY}, rendered like
+         * {@link Table.ForeignKey}.
+         */
+        String createDefinition() {
+            final StringBuilder builder = new StringBuilder("(");
+            join(builder, mColumnNames);
+            builder.append(") REFERENCES ").append(table);
+            if (!mReferencedColumnNames.isEmpty()) {
+                join(builder.append('('), mReferencedColumnNames).append(')');
+            }
+            if (!NO_ACTION.equalsIgnoreCase(onUpdate)) {
+                builder.append(" ON UPDATE ").append(onUpdate);
+            }
+            if (!NO_ACTION.equalsIgnoreCase(onDelete)) {
+                builder.append(" ON DELETE ").append(onDelete);
+            }
+
+            return builder.toString();
+        }
+
+        private static StringBuilder join(StringBuilder builder, List<String> names) {
+            for (int i = 0; i < names.size(); i++) {
+                builder.append(i == 0 ? "" : ", ").append(names.get(i));
+            }
+
+            return builder;
+        }
+    }
+
+    public static final class IndexInfo {
+        public static final String ORIGIN_CREATE_INDEX = "c";
+        public static final String ORIGIN_UNIQUE = "u";
+        public static final String ORIGIN_PRIMARY_KEY = "pk";
+
+        public final String name;
+        public final boolean unique;
+        public final String origin;
+        public final boolean partial;
+
+        /**
+         * {@code CREATE INDEX} statement from {@code sqlite_master}. only read for
+         * {@link #ORIGIN_CREATE_INDEX} indexes.
+         */
+        public final String sql;
+
+        private final List<String> mColumnNames;
+
+        IndexInfo(String name, boolean unique, String origin, boolean partial) {
+            this(name, unique, origin, partial, Collections.emptyList(), null);
+        }
+
+        private IndexInfo(String name, boolean unique, String origin, boolean partial,
+                List<String> columnNames, String sql) {
+            this.name = Objects.requireNonNull(name);
+            this.unique = unique;
+            this.origin = Objects.requireNonNull(origin);
+            this.partial = partial;
+            this.sql = sql;
+            mColumnNames = Collections.unmodifiableList(columnNames);
+        }
+
+        /**
+         * @return indexed column names, null for expressions. not read for the primary key.
+         */
+        public List<String> getColumnNames() {
+            return mColumnNames;
+        }
+
+        IndexInfo with(List<String> columnNames, String sql) {
+            return new IndexInfo(name, unique, origin, partial, columnNames, sql);
+        }
+    }
+
+    /**
+     * Live secondary indexes are {@link Table.Index}es rendering their {@code sqlite_master.sql}
+     * and are compared by definition.
+     */
+    static final class IntrospectedTable extends Table {
+        /**
+         * {@link Table.FullText} name to its virtual table and trigger definitions.
+         */
+        final Map<String, String> fullTextDefinitions;
+
+        IntrospectedTable(String tableName, Set<Option> options, List<Column> columns,
+                Map<String, String> fullTextDefinitions) {
+            super(tableName, options, columns.get(0),
+                    columns.subList(1, columns.size()).toArray(new Column[columns.size() - 1]));
+            this.fullTextDefinitions = fullTextDefinitions;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parameterized DML rendered once from a {@link Table}'s columns, with fixed bind indexes so a
+ * single compiled {@link SqlStatement} can be reused for every row.
+ * <p>
+ * {@link #insertSql}, {@link #insertOrReplaceSql} and {@link #upsertSql} bind every column at
+ * {@link #getInsertIndex(Table.Column)}. {@link #updateSql} binds the non-key columns first and
+ * the primary key last, at {@link #getUpdateIndex(Table.Column)}. {@link #selectSql} binds the
+ * primary key in key order.
+ */
+public final class TableStatements {
+    public final String insertSql;
+    public final String insertOrReplaceSql;
+
+    /**
+     * {@code INSERT ... ON CONFLICT (pk) DO UPDATE}. Needs SQLite 3.24 or later. null if the
+     * table has no primary key.
+     */
+    public final String upsertSql;
+
+    /**
+     * {@code UPDATE ... WHERE pk = ?}. null if the table has no primary key.
+     */
+    public final String updateSql;
+
+    /**
+     * {@code SELECT} of every column in {@link #getColumns()} order {@code WHERE pk = ?}. null
+     * if the table has no primary key.
+     */
+    public final String selectSql;
+
+    private final Table.Column[] mColumns;
+    private final int[] mUpdateIndexes;
+
+    TableStatements(Table table) {
+        final List<Table.Column> columns = new ArrayList<>();
+        for (Table.Column column : table.getColumns()) {
+            if (!column.isConstraint()) {
+                columns.add(column);
+            }
+        }
+        mColumns = columns.toArray(new Table.Column[columns.size()]);
+
+        final Table.Column[] primaryKey = table.getPrimaryKey();
+        final List<Table.Column> values = new ArrayList<>();
+        for (Table.Column column : mColumns) {
+            if (indexOf(primaryKey, column) == -1) {
+                values.add(column);
+            }
+        }
+
+        final StringBuilder names = new StringBuilder();
+        final StringBuilder placeholders = new StringBuilder();
+        for (Table.Column column : mColumns) {
+            if (0 < names.length()) {
+                names.append(", ");
+                placeholders.append(", ");
+            }
+            names.append(column.name);
+            placeholders.append('?');
+        }
+
+        final String into = " INTO " + table.tableName + " (" + names + ") VALUES (" +
+                placeholders + ")";
+        insertSql = "INSERT" + into;
+        insertOrReplaceSql = "INSERT OR REPLACE" + into;
+
+        mUpdateIndexes = new int[mColumns.length];
+        if (primaryKey.length == 0) {
+            upsertSql = null;
+            updateSql = null;
+            selectSql = null;
+            return;
+        }
+
+        final StringBuilder select = new StringBuilder("SELECT ").append(names)
+                .append(" FROM ").append(table.tableName);
+        for (int i = 0; i < primaryKey.length; i++) {
+            select.append(i == 0 ? " WHERE " : " AND ").append(primaryKey[i].name)
+                    .append(" = ?");
+        }
+        selectSql = select.toString();
+
+        final StringBuilder upsert = new StringBuilder(insertSql).append(" ON CONFLICT (");
+        for (int i = 0; i < primaryKey.length; i++) {
+            upsert.append(i == 0 ? "" : ", ").append(primaryKey[i].name);
+        }
+        upsert.append(") DO ");
+        if (values.isEmpty()) {
+            upsert.append("NOTHING");
+        } else {
+            upsert.append("UPDATE SET ");
+            for (int i = 0; i < values.size(); i++) {
+                final String name = values.get(i).name;
+                upsert.append(i == 0 ? "" : ", ").append(name).append(" = excluded.")
+                        .append(name);
+            }
+        }
+        upsertSql = upsert.toString();
+
+        final StringBuilder update = new StringBuilder("UPDATE ").append(table.tableName);
+        int index = 0;
+        for (Table.Column column : values) {
+            update.append(index == 0 ? " SET " : ", ").append(column.name).append(" = ?");
+            mUpdateIndexes[indexOf(mColumns, column)] = ++index;
+        }
+        for (int i = 0; i < primaryKey.length; i++) {
+            update.append(i == 0 ? " WHERE " : " AND ").append(primaryKey[i].name)
+                    .append(" = ?");
+            mUpdateIndexes[indexOf(mColumns, primaryKey[i])] = ++index;
+        }
+        // a table that is all key has nothing to SET.
+        updateSql = values.isEmpty() ? null : update.toString();
+    }
+
+    /**
+     * @return columns bound by {@link #insertSql}, in bind order.
+     */
+    public Table.Column[] getColumns() {
+        return mColumns.clone();
+    }
+
+    public int getColumnCount() {
+        return mColumns.length;
+    }
+
+    /**
+     * @return 1-based bind index of {@code column} in {@link #insertSql},
+     * {@link #insertOrReplaceSql} and {@link #upsertSql}.
+     */
+    public int getInsertIndex(Table.Column column) {
+        return checkedIndexOf(column) + 1;
+    }
+
+    /**
+     * @return 1-based bind index of {@code column} in {@link #updateSql}.
+     */
+    public int getUpdateIndex(Table.Column column) {
+        if (updateSql == null) {
+            throw new IllegalStateException("no update statement");
+        }
+
+        return mUpdateIndexes[checkedIndexOf(column)];
+    }
+
+    int indexOf(Table.Column column) {
+        return indexOf(mColumns, column);
+    }
+
+    private int checkedIndexOf(Table.Column column) {
+        final int index = indexOf(mColumns, column);
+        if (index == -1) {
+            throw new IllegalArgumentException("no such column: " + column.name);
+        }
+
+        return index;
+    }
+
+    private static int indexOf(Table.Column[] columns, Table.Column column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] == column) {
+                return i;
+            }
+        }
+
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].name.equalsIgnoreCase(column.name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedRebuildTest {
+    private static class OldTable extends Table {
+        OldTable() {
+            super("item",
+                    new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL),
+                    new Column("name", TEXT),
+                    new Column("note", TEXT));
+        }
+    }
+
+    private static class NewTable extends Table {
+        static final Column NAME = new Column("name", TEXT, NOT_NULL,
+                new Attribute("DEFAULT ''"));
+
+        NewTable() {
+            super("item",
+                    new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL),
+                    NAME,
+                    new Index("item_name", NAME));
+        }
+    }
+
+    /**
+     * Runs {@link #hook} before the n-th top-level transaction, where the rebuild commits
+     * between chunks.
+     */
+    private static class HookedDatabase extends JdbcDatabase {
+        int transactions;
+        int hookedTransaction = -1;
+        Runnable hook;
+
+        @Override
+        public void beginTransaction() {
+            if (!inTransaction() && ++transactions == hookedTransaction) {
+                hook.run();
+            }
+            super.beginTransaction();
+        }
+    }
+
+    private HookedDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mDb = new HookedDatabase();
+        for (String sql : new OldTable().createSchemaSql()) {
+            mDb.execSQL(sql);
+        }
+        for (int id = 1; id <= 10; id++) {
+            if (id != 5) {
+                mDb.execSQL("INSERT INTO item (id, name, note) VALUES (" + id + ", 'n" + id +
+                        "', 'x')");
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    private SchemaDiff diff() {
+        return SchemaDiff.compare(TableInfo.read(mDb, "item").toTable(), new NewTable());
+    }
+
+    private List<List<Object>> items() {
+        return mDb.rows("SELECT id, name FROM item ORDER BY id");
+    }
+
+    private static List<Object> item(long id, String name) {
+        return Arrays.asList(id, name);
+    }
+
+    private void assertRebuilt() {
+        assertTrue(TableInfo.read(mDb, "item").matches(new NewTable()));
+        assertEquals(Arrays.asList("item", ChunkedRebuild.INDEX_TABLE,
+                ChunkedRebuild.PROGRESS_TABLE), mDb.tableNames());
+        assertEquals(Collections.emptyList(),
+                mDb.rows("SELECT name FROM sqlite_master WHERE type = 'trigger'"));
+        assertEquals(Collections.emptyList(),
+                mDb.rows("SELECT * FROM " + ChunkedRebuild.PROGRESS_TABLE));
+    }
+
+    @Test
+    public void rebuild_copiesEveryRow() {
+        new ChunkedRebuild(mDb, 3).rebuild(diff());
+
+        assertEquals(Arrays.asList(item(1, "n1"), item(2, "n2"), item(3, "n3"), item(4, "n4"),
+                item(6, "n6"), item(7, "n7"), item(8, "n8"), item(9, "n9"), item(10, "n10")),
+                items());
+        assertRebuilt();
+    }
+
+    @Test
+    public void rebuild_keepsWritesMadeBetweenChunks() {
+        // the setup, then the chunk of rowids 1 to 3.
+        mDb.hookedTransaction = 3;
+        mDb.hook = () -> {
+            mDb.execSQL("UPDATE item SET name = 'updated' WHERE id = 2");
+            mDb.execSQL("DELETE FROM item WHERE id = 3");
+            mDb.execSQL("INSERT INTO item (id, name) VALUES (0, 'before')");
+            mDb.execSQL("UPDATE item SET name = 'pending' WHERE id = 8");
+            mDb.execSQL("INSERT INTO item (id, name) VALUES (11, 'after')");
+        };
+
+        new ChunkedRebuild(mDb, 3).rebuild(diff());
+
+        assertEquals(Arrays.asList(item(0, "before"), item(1, "n1"), item(2, "updated"),
+                item(4, "n4"), item(6, "n6"), item(7, "n7"), item(8, "pending"),
+                item(9, "n9"), item(10, "n10"), item(11, "after")), items());
+        assertRebuilt();
+    }
+
+    @Test
+    public void recover_resumesInterruptedRebuild() {
+        mDb.hookedTransaction = 3;
+        mDb.hook = () -> {
+            throw new IllegalStateException("interrupted");
+        };
+        try {
+            new ChunkedRebuild(mDb, 3).rebuild(diff());
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(Collections.singletonList(Collections.singletonList(3L)),
+                mDb.rows("SELECT last_rowid FROM " + ChunkedRebuild.PROGRESS_TABLE));
+
+        // still mirrored while the rebuild waits for the next open.
+        mDb.execSQL("UPDATE item SET name = 'updated' WHERE id = 1");
+        mDb.hookedTransaction = -1;
+        new ChunkedRebuild(mDb, 3).recover();
+
+        assertEquals(Arrays.asList(item(1, "updated"), item(2, "n2"), item(3, "n3"),
+                item(4, "n4"), item(6, "n6"), item(7, "n7"), item(8, "n8"), item(9, "n9"),
+                item(10, "n10")), items());
+        assertRebuilt();
+    }
+
+    @Test
+    public void recover_dropsStaleTables() {
+        mDb.execSQL("CREATE TABLE " + SchemaDiff.TMP_TABLE_PREFIX + "1(a)");
+        mDb.execSQL("CREATE TABLE tmp_old_table_2(a)");
+        mDb.execSQL("CREATE TABLE tmpxoldxtablex3(a)");
+
+        new ChunkedRebuild(mDb, 3).recover();
+
+        assertEquals(Arrays.asList("item", "tmpxoldxtablex3"), mDb.tableNames());
+    }
+
+    @Test
+    public void recover_resumesRebuildOfRenamedOldTable() {
+        // an earlier version renamed the old table aside and copied it into the new one.
+        mDb.execSQL("ALTER TABLE item RENAME TO tmp_old_table_7");
+        mDb.execSQL(new NewTable().createBareSql());
+        mDb.execSQL("INSERT INTO item (id, name) SELECT id, name FROM tmp_old_table_7 " +
+                "WHERE rowid <= 2");
+        mDb.execSQL("CREATE TABLE " + ChunkedRebuild.PROGRESS_TABLE + "(" +
+                "table_name TEXT PRIMARY KEY NOT NULL, tmp_table_name TEXT NOT NULL, " +
+                "copy_sql TEXT NOT NULL, last_rowid INTEGER NOT NULL)");
+        mDb.execSQL("INSERT INTO " + ChunkedRebuild.PROGRESS_TABLE + " VALUES ('item', " +
+                "'tmp_old_table_7', 'INSERT INTO item (id, name) SELECT id, name " +
+                "FROM tmp_old_table_7', 2)");
+        mDb.execSQL("CREATE TABLE " + ChunkedRebuild.INDEX_TABLE + "(" +
+                "table_name TEXT NOT NULL, sql TEXT NOT NULL)");
+        mDb.execSQL("INSERT INTO " + ChunkedRebuild.INDEX_TABLE + " VALUES ('item', " +
+                "'CREATE INDEX IF NOT EXISTS item_name ON item(name)')");
+
+        new ChunkedRebuild(mDb, 3).recover();
+
+        assertEquals(9, items().size());
+        assertRebuilt();
+    }
+}
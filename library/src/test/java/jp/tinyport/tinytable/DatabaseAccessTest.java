@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DatabaseAccessTest {
+    private static class FakeConnectionFactory implements ConnectionFactory {
+        final FakeDatabase writer = new FakeDatabase();
+        final List<FakeDatabase> readers = Collections.synchronizedList(new ArrayList<>());
+        final List<SqlExecutor> closed = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public SqlExecutor openWriter() {
+            return writer;
+        }
+
+        @Override
+        public SqlExecutor openReader() {
+            final FakeDatabase reader = new FakeDatabase();
+            readers.add(reader);
+            return reader;
+        }
+
+        @Override
+        public void close(SqlExecutor connection) {
+            closed.add(connection);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void write_runsOnWriterThreadAfterInitializer() {
+        final FakeConnectionFactory factory = new FakeConnectionFactory();
+        final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        try (DatabaseAccess access = new DatabaseAccess(factory, 1, executor -> {
+            threads.add(Thread.currentThread().getName());
+            executor.execSQL("init");
+        })) {
+            final CompletableFuture<Void> first = access.write(executor -> {
+                threads.add(Thread.currentThread().getName());
+                executor.execSQL("first");
+                return null;
+            });
+            final CompletableFuture<Void> second = access.write(executor -> {
+                threads.add(Thread.currentThread().getName());
+                executor.execSQL("second");
+                return null;
+            });
+
+            first.join();
+            second.join();
+            assertEquals(3, threads.size());
+            for (String thread : threads) {
+                assertEquals("tinytable-writer", thread);
+            }
+            assertEquals(Arrays.asList("init", "first", "second"),
+                    factory.writer.statements);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void read_waitsForInitializer() throws Exception {
+        final FakeConnectionFactory factory = new FakeConnectionFactory();
+        final CountDownLatch initialized = new CountDownLatch(1);
+        try (DatabaseAccess access = new DatabaseAccess(factory, 1, executor -> {
+            try {
+                initialized.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        })) {
+            final CompletableFuture<Integer> read = access.readAsync(executor -> 1,
+                    Runnable::run);
+            assertFalse(access.isReady());
+            assertFalse(read.isDone());
+            assertTrue(factory.readers.isEmpty());
+
+            initialized.countDown();
+            access.ready().get();
+            assertTrue(access.isReady());
+            assertEquals(Integer.valueOf(1), read.get());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void read_boundedByReaderCount() throws Exception {
+        final FakeConnectionFactory factory = new FakeConnectionFactory();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        try (DatabaseAccess access = new DatabaseAccess(factory, 2, executor -> {
+        })) {
+            for (int i = 0; i < 3; i++) {
+                final Thread thread = new Thread(() -> access.read(executor -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return active.decrementAndGet();
+                }));
+                thread.start();
+                threads.add(thread);
+            }
+
+            while (active.get() < 2) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(50);
+            assertEquals(2, active.get());
+
+            release.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(2, maxActive.get());
+            assertEquals(2, factory.readers.size());
+            for (FakeDatabase reader : factory.readers) {
+                assertEquals(Collections.singletonList("PRAGMA query_only = ON"),
+                        reader.statements);
+            }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void read_reusesIdleReader() {
+        final FakeConnectionFactory factory = new FakeConnectionFactory();
+        try (DatabaseAccess access = new DatabaseAccess(factory, 2, executor -> {
+        })) {
+            final SqlExecutor first = access.read(executor -> executor);
+            final SqlExecutor second = access.read(executor -> executor);
+
+            assertTrue(first == second);
+            assertEquals(1, factory.readers.size());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void read_initializerFailed() {
+        final FakeConnectionFactory factory = new FakeConnectionFactory();
+        try (DatabaseAccess access = new DatabaseAccess(factory, 1, executor -> {
+            throw new IllegalStateException("init");
+        })) {
+            try {
+                access.read(executor -> executor);
+                fail();
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertFalse(access.isReady());
+            assertTrue(factory.readers.isEmpty());
+            assertEquals(Collections.singletonList(factory.writer), factory.closed);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void close_closesConnections() {
+        final FakeConnectionFactory factory = new FakeConnectionFactory();
+        final DatabaseAccess access = new DatabaseAccess(factory, 1, executor -> {
+        });
+        final SqlExecutor reader = access.read(executor -> executor);
+
+        access.close();
+
+        assertEquals(2, factory.closed.size());
+        assertTrue(factory.closed.contains(factory.writer));
+        assertTrue(factory.closed.contains(reader));
+        try {
+            access.read(executor -> executor);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * {@link RowCursor} over rows of {@link Long}, {@link Double}, {@link String}, {@code byte[]}
+ * and null, converted between storage classes the way SQLite does.
+ */
+class FakeCursor implements RowCursor {
+    private final String[] mColumns;
+    private final Object[][] mRows;
+    private int mPosition = -1;
+    private boolean mClosed;
+
+    FakeCursor(String[] columns, Object[]... rows) {
+        mColumns = columns;
+        mRows = rows;
+    }
+
+    Object[] getRow() {
+        return mRows[mPosition].clone();
+    }
+
+    boolean isClosed() {
+        return mClosed;
+    }
+
+    @Override
+    public boolean moveToNext() {
+        if (mPosition < mRows.length) {
+            mPosition++;
+        }
+
+        return mPosition < mRows.length;
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        return Arrays.asList(mColumns).indexOf(columnName);
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        final Object value = value(columnIndex);
+        if (value == null) {
+            return FIELD_TYPE_NULL;
+        } else if (value instanceof Long) {
+            return FIELD_TYPE_INTEGER;
+        } else if (value instanceof Double) {
+            return FIELD_TYPE_FLOAT;
+        } else if (value instanceof String) {
+            return FIELD_TYPE_STRING;
+        }
+
+        return FIELD_TYPE_BLOB;
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return value(columnIndex) == null;
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        final Object value = value(columnIndex);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+
+        return value == null ? 0 : (long) parsePrefix(value.toString());
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        final Object value = value(columnIndex);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+
+        return value == null ? 0 : parsePrefix(value.toString());
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        final Object value = value(columnIndex);
+        if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        final Object value = value(columnIndex);
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+
+        return value == null ? null : value.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+    }
+
+    private Object value(int columnIndex) {
+        return mRows[mPosition][columnIndex];
+    }
+
+    /**
+     * @return the number at the start of {@code text}, like SQLite's CAST, or 0.
+     */
+    private static double parsePrefix(String text) {
+        int end = 0;
+        while (end < text.length() &&
+                ("+-.eE".indexOf(text.charAt(end)) != -1 || Character.isDigit(text.charAt(end)))) {
+            end++;
+        }
+
+        for (; 0 < end; end--) {
+            try {
+                return Double.parseDouble(text.substring(0, end));
+            } catch (NumberFormatException ignored) {
+                // shorten until the prefix parses.
+            }
+        }
+
+        return 0;
+    }
+}
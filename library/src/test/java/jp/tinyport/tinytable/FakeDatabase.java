@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory {@link SqlExecutor} that answers queries with canned results and records the
+ * statements it is given.
+ */
+class FakeDatabase implements SqlExecutor {
+    final List<String> statements = new ArrayList<>();
+    final List<String> queries = new ArrayList<>();
+
+    private static final String MASTER_QUERY = "SELECT type, name, sql FROM sqlite_master " +
+            "WHERE tbl_name = ? OR (type = 'table' AND sql LIKE 'CREATE VIRTUAL TABLE %')";
+
+    private final Map<String, Object[][]> mResults = new HashMap<>();
+    private final Map<String, List<Object[]>> mMasterRows = new HashMap<>();
+    private int mTransactionDepth;
+
+    /**
+     * @param rows column names first, then the rows.
+     */
+    FakeDatabase result(String sql, String[] args, Object[]... rows) {
+        mResults.put(key(sql, args), rows);
+        return this;
+    }
+
+    /**
+     * Answers the queries of {@link TableInfo#read(RowSource, String)} for a table.
+     *
+     * @param columns rows of {@code PRAGMA table_info}: name, type, notnull, dflt_value, pk.
+     */
+    FakeDatabase table(String name, String createSql, Object[]... columns) {
+        final Object[][] tableInfo = new Object[columns.length + 1][];
+        tableInfo[0] = new String[]{"cid", "name", "type", "notnull", "dflt_value", "pk"};
+        for (int i = 0; i < columns.length; i++) {
+            tableInfo[i + 1] = new Object[6];
+            tableInfo[i + 1][0] = (long) i;
+            System.arraycopy(columns[i], 0, tableInfo[i + 1], 1, 5);
+        }
+
+        master(name, "table", name, createSql);
+        return result("PRAGMA table_info('" + name + "')", new String[0], tableInfo);
+    }
+
+    /**
+     * @param rows rows of {@code PRAGMA foreign_key_list}: id, seq, table, from, to.
+     */
+    FakeDatabase foreignKeys(String tableName, Object[]... rows) {
+        final Object[][] result = new Object[rows.length + 1][];
+        result[0] = new String[]{"id", "seq", "table", "from", "to", "on_update", "on_delete",
+                "match"};
+        for (int i = 0; i < rows.length; i++) {
+            result[i + 1] = Arrays.copyOf(rows[i], 8);
+            result[i + 1][5] = "NO ACTION";
+            result[i + 1][6] = "NO ACTION";
+            result[i + 1][7] = "NONE";
+        }
+
+        return result("PRAGMA foreign_key_list('" + tableName + "')", new String[0], result);
+    }
+
+    /**
+     * @param rows name, unique, origin, partial, {@code sqlite_master.sql} and the
+     *             {@code String[]} of indexed column names of each index.
+     */
+    FakeDatabase indexes(String tableName, Object[]... rows) {
+        final Object[][] indexList = new Object[rows.length + 1][];
+        indexList[0] = new String[]{"seq", "name", "unique", "origin", "partial"};
+        for (int i = 0; i < rows.length; i++) {
+            final String name = (String) rows[i][0];
+            indexList[i + 1] = new Object[]{(long) i, name, rows[i][1], rows[i][2], rows[i][3]};
+            master(tableName, "index", name, rows[i][4]);
+
+            final String[] columns = (String[]) rows[i][5];
+            final Object[][] indexInfo = new Object[columns.length + 1][];
+            indexInfo[0] = new String[]{"seqno", "cid", "name"};
+            for (int j = 0; j < columns.length; j++) {
+                indexInfo[j + 1] = new Object[]{(long) j, columns[j] == null ? -2L : 0L,
+                        columns[j]};
+            }
+            result("PRAGMA index_info('" + name + "')", new String[0], indexInfo);
+        }
+
+        return result("PRAGMA index_list('" + tableName + "')", new String[0], indexList);
+    }
+
+    /**
+     * Adds a row of {@code sqlite_master} to the schema query of {@link TableInfo}.
+     */
+    FakeDatabase master(String tableName, String type, String name, Object sql) {
+        List<Object[]> rows = mMasterRows.get(tableName);
+        if (rows == null) {
+            rows = new ArrayList<>();
+            rows.add(new String[]{"type", "name", "sql"});
+            mMasterRows.put(tableName, rows);
+        }
+        rows.add(new Object[]{type, name, sql});
+
+        return result(MASTER_QUERY, new String[]{tableName}, rows.toArray(new Object[0][]));
+    }
+
+    boolean inTransaction() {
+        return 0 < mTransactionDepth;
+    }
+
+    @Override
+    public RowCursor query(String sql, String... selectionArgs) {
+        queries.add(sql);
+        final Object[][] rows = mResults.get(key(sql, selectionArgs));
+        return rows == null ?
+                new FakeCursor(new String[0]) :
+                new FakeCursor((String[]) rows[0], Arrays.copyOfRange(rows, 1, rows.length));
+    }
+
+    @Override
+    public void execSQL(String sql) {
+        statements.add(sql);
+    }
+
+    @Override
+    public SqlStatement compileStatement(String sql) {
+        return new SqlStatement() {
+            @Override
+            public void bindNull(int index) {
+            }
+
+            @Override
+            public void bindLong(int index, long value) {
+            }
+
+            @Override
+            public void bindDouble(int index, double value) {
+            }
+
+            @Override
+            public void bindString(int index, String value) {
+            }
+
+            @Override
+            public void bindBlob(int index, byte[] value) {
+            }
+
+            @Override
+            public void clearBindings() {
+            }
+
+            @Override
+            public void execute() {
+                statements.add(sql);
+            }
+
+            @Override
+            public long executeInsert() {
+                statements.add(sql);
+                return -1;
+            }
+
+            @Override
+            public int executeUpdateDelete() {
+                statements.add(sql);
+                return 0;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void beginTransaction() {
+        mTransactionDepth++;
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+    }
+
+    @Override
+    public void endTransaction() {
+        mTransactionDepth--;
+    }
+
+    private static String key(String sql, String[] args) {
+        return sql + Arrays.toString(args);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link SqlExecutor} over an in-memory SQLite database through JDBC, for the tests that need
+ * SQLite itself to run triggers, row copies and schema changes. Transactions nest like those
+ * of Android's {@code SQLiteDatabase}.
+ */
+class JdbcDatabase implements SqlExecutor, Closeable {
+    private final Connection mConnection;
+    private int mTransactionDepth;
+    private boolean mTransactionSuccessful;
+    private boolean mTransactionFailed;
+
+    JdbcDatabase() {
+        try {
+            mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        } catch (SQLException e) {
+            throw wrap(e);
+        }
+    }
+
+    /**
+     * @return the rows of {@code sql}, INTEGER values as {@link Long}s.
+     */
+    List<List<Object>> rows(String sql, String... args) {
+        final List<List<Object>> rows = new ArrayList<>();
+        try (FakeCursor c = select(sql, args)) {
+            while (c.moveToNext()) {
+                rows.add(Arrays.asList(c.getRow()));
+            }
+        }
+
+        return rows;
+    }
+
+    List<String> tableNames() {
+        final List<String> names = new ArrayList<>();
+        for (List<Object> row : rows("SELECT name FROM sqlite_master " +
+                "WHERE type = 'table' ORDER BY name")) {
+            names.add((String) row.get(0));
+        }
+
+        return names;
+    }
+
+    @Override
+    public RowCursor query(String sql, String... selectionArgs) {
+        return select(sql, selectionArgs);
+    }
+
+    private FakeCursor select(String sql, String... selectionArgs) {
+        try (PreparedStatement statement = mConnection.prepareStatement(sql)) {
+            for (int i = 0; i < selectionArgs.length; i++) {
+                statement.setString(i + 1, selectionArgs[i]);
+            }
+
+            try (ResultSet result = statement.executeQuery()) {
+                final ResultSetMetaData metaData = result.getMetaData();
+                final String[] columns = new String[metaData.getColumnCount()];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = metaData.getColumnLabel(i + 1);
+                }
+
+                final List<Object[]> rows = new ArrayList<>();
+                while (result.next()) {
+                    final Object[] row = new Object[columns.length];
+                    for (int i = 0; i < row.length; i++) {
+                        final Object value = result.getObject(i + 1);
+                        row[i] = value instanceof Integer ? (Object) ((Integer) value).longValue() :
+                                value;
+                    }
+                    rows.add(row);
+                }
+
+                return new FakeCursor(columns, rows.toArray(new Object[0][]));
+            }
+        } catch (SQLException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public void execSQL(String sql) {
+        try (Statement statement = mConnection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public SqlStatement compileStatement(String sql) {
+        final PreparedStatement statement;
+        try {
+            statement = mConnection.prepareStatement(sql);
+        } catch (SQLException e) {
+            throw wrap(e);
+        }
+
+        return new SqlStatement() {
+            @Override
+            public void bindNull(int index) {
+                run(() -> statement.setNull(index, java.sql.Types.NULL));
+            }
+
+            @Override
+            public void bindLong(int index, long value) {
+                run(() -> statement.setLong(index, value));
+            }
+
+            @Override
+            public void bindDouble(int index, double value) {
+                run(() -> statement.setDouble(index, value));
+            }
+
+            @Override
+            public void bindString(int index, String value) {
+                run(() -> statement.setString(index, value));
+            }
+
+            @Override
+            public void bindBlob(int index, byte[] value) {
+                run(() -> statement.setBytes(index, value));
+            }
+
+            @Override
+            public void clearBindings() {
+                run(statement::clearParameters);
+            }
+
+            @Override
+            public void execute() {
+                executeUpdateDelete();
+            }
+
+            @Override
+            public long executeInsert() {
+                executeUpdateDelete();
+                try (RowCursor c = query("SELECT last_insert_rowid()")) {
+                    c.moveToNext();
+                    return c.getLong(0);
+                }
+            }
+
+            @Override
+            public int executeUpdateDelete() {
+                try {
+                    return statement.executeUpdate();
+                } catch (SQLException e) {
+                    throw wrap(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                run(statement::close);
+            }
+        };
+    }
+
+    @Override
+    public void beginTransaction() {
+        if (mTransactionDepth == 0) {
+            execSQL("BEGIN IMMEDIATE");
+            mTransactionFailed = false;
+        }
+        mTransactionDepth++;
+        mTransactionSuccessful = false;
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        mTransactionSuccessful = true;
+    }
+
+    @Override
+    public void endTransaction() {
+        mTransactionFailed |= !mTransactionSuccessful;
+        mTransactionSuccessful = false;
+        if (--mTransactionDepth == 0) {
+            execSQL(mTransactionFailed ? "ROLLBACK" : "COMMIT");
+        }
+    }
+
+    boolean inTransaction() {
+        return 0 < mTransactionDepth;
+    }
+
+    @Override
+    public void close() {
+        run(mConnection::close);
+    }
+
+    private interface SqlAction {
+        void run() throws SQLException;
+    }
+
+    private static void run(SqlAction action) {
+        try {
+            action.run();
+        } catch (SQLException e) {
+            throw wrap(e);
+        }
+    }
+
+    private static RuntimeException wrap(SQLException e) {
+        return new IllegalStateException(e.getMessage(), e);
+    }
+}
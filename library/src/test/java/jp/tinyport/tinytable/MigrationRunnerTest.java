@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MigrationRunnerTest {
+    private static class V1Table extends Table {
+        static final Column ID = new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL);
+        static final Column NAME = new Column("name", TEXT);
+
+        V1Table() {
+            super("example", ID, NAME);
+        }
+    }
+
+    private static class V2Table extends Table {
+        V2Table() {
+            super("example", V1Table.ID, V1Table.NAME, NOTE);
+        }
+    }
+
+    private static class OtherTable extends Table {
+        OtherTable() {
+            super("other", new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL));
+        }
+    }
+
+    private static final Table.Column NOTE = new Table.Column("note", Table.TEXT);
+
+    private static Map<Integer, List<MigrationOp>> compact(MigrationRunner runner,
+            Table... tables) {
+        return runner.compact(1, 4, new SchemaSet(tables));
+    }
+
+    private static Map<Integer, List<MigrationOp>> ops(Object... versionsAndOps) {
+        final Map<Integer, List<MigrationOp>> ops = new HashMap<>();
+        for (int i = 0; i < versionsAndOps.length; i += 2) {
+            ops.put((Integer) versionsAndOps[i],
+                    Collections.singletonList((MigrationOp) versionsAndOps[i + 1]));
+        }
+
+        return ops;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void createPlan_downgradeOverUpdate() {
+        final MigrationRunner runner = new MigrationRunner();
+        runner.addStep(2, MigrationOp.update("example", "UPDATE example SET name = lower(name)"));
+
+        runner.createPlan(2, 1, new V1Table());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void createPlan_downgradeOverUpdateOfKeptColumn() {
+        final MigrationRunner runner = new MigrationRunner();
+        runner.addStep(2, MigrationOp.addColumn("example", NOTE),
+                MigrationOp.update("example", "UPDATE example SET note = name, name = NULL")
+                        .writing("note", "name"));
+
+        runner.createPlan(2, 1, new V1Table());
+    }
+
+    @Test
+    public void createPlan_downgradeOverUpdateOfDroppedColumn() {
+        final MigrationRunner runner = new MigrationRunner();
+        runner.addStep(2, MigrationOp.addColumn("example", NOTE),
+                MigrationOp.update("example", "UPDATE example SET note = name").writing("NOTE"));
+
+        assertFalse(runner.createPlan(2, 1, new V1Table()).isEmpty());
+    }
+
+    @Test
+    public void createPlan_downgradeStep() {
+        final MigrationRunner runner = new MigrationRunner();
+        runner.addStep(2, MigrationOp.update("example", "UPDATE example SET name = lower(name)"));
+        runner.addDowngradeStep(2, plan -> plan.execSQL("UPDATE example SET name = upper(name)"));
+
+        assertFalse(runner.createPlan(2, 1, new V1Table()).isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void createPlan_downgradeOverOpaqueStep() {
+        final MigrationRunner runner = new MigrationRunner();
+        runner.addStep(2, plan -> plan.execSQL("DELETE FROM example"));
+
+        runner.createPlan(2, 1, new V1Table());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void writing_notAnUpdate() {
+        MigrationOp.addColumn("example", NOTE).writing("note");
+    }
+
+    @Test
+    public void compact_cancelsColumnAddedAndDropped() {
+        final MigrationRunner runner = new MigrationRunner();
+        runner.addStep(2, MigrationOp.addColumn("example", NOTE));
+        runner.addStep(3, MigrationOp.dropColumn("EXAMPLE", "Note"));
+
+        assertEquals(ops(), compact(runner, new OtherTable()));
+    }
+
+    @Test
+    public void compact_keepsAddedColumnUpdatedBeforeDrop() {
+        final MigrationOp add = MigrationOp.addColumn("example", NOTE);
+        final MigrationOp update = MigrationOp.update("example", "UPDATE example SET note = name");
+        final MigrationOp drop = MigrationOp.dropColumn("example", "note");
+        final MigrationRunner runner = new MigrationRunner();
+        runner.addStep(2, add);
+        runner.addStep(3, update);
+        runner.addStep(4, drop);
+
+        assertEquals(ops(2, add, 3, update, 4, drop), compact(runner, new OtherTable()));
+    }
+
+    @Test
+    public void compact_removesChangesTheFinalDiffMakes() {
+        final MigrationRunner runner = new MigrationRunner();
+        runner.addStep(2, MigrationOp.addColumn("example", NOTE));
+        runner.addStep(3, MigrationOp.dropColumn("example", "note"),
+                MigrationOp.addColumn("example", new Table.Column("extra", Table.TEXT)));
+        runner.addStep(4, MigrationOp.rebuild(new V2Table()));
+
+        assertEquals(ops(), compact(runner, new V2Table()));
+    }
+
+    @Test
+    public void compact_keepsDropOfColumnTheFinalSchemaKeeps() {
+        final MigrationOp add = MigrationOp.addColumn("example", NOTE);
+        final MigrationOp drop = MigrationOp.dropColumn("example", "name");
+        final MigrationRunner runner = new MigrationRunner();
+        runner.addStep(2, add);
+        runner.addStep(3, drop);
+
+        // the drop resets the values of name, so the add before it runs too.
+        assertEquals(ops(2, add, 3, drop), compact(runner, new V1Table()));
+    }
+
+    @Test
+    public void compact_removesChangesTheNextRebuildMakes() {
+        final MigrationOp rebuild = MigrationOp.rebuild(new V2Table());
+        final MigrationRunner runner = new MigrationRunner();
+        runner.addStep(2, MigrationOp.addColumn("example", NOTE));
+        runner.addStep(3, rebuild);
+
+        assertEquals(ops(3, rebuild), compact(runner, new OtherTable()));
+    }
+
+    @Test
+    public void compact_keepsChangesBeforeUpdateOrOpaqueStep() {
+        final MigrationOp add = MigrationOp.addColumn("example", NOTE);
+        final MigrationOp update = MigrationOp.update("example", "UPDATE example SET note = name");
+        final MigrationStep step = plan -> plan.execSQL("DELETE FROM other");
+        final MigrationRunner runner = new MigrationRunner();
+        runner.addStep(2, add);
+        runner.addStep(3, update);
+        runner.addStep(4, step);
+
+        final Map<Integer, List<MigrationOp>> ops = compact(runner, new V2Table());
+        assertEquals(new HashSet<>(Arrays.asList(2, 3, 4)), ops.keySet());
+        assertEquals(Collections.singletonList(add), ops.get(2));
+        assertEquals(Collections.singletonList(update), ops.get(3));
+    }
+}
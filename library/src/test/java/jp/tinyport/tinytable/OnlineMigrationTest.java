@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OnlineMigrationTest {
+    private static class OldTable extends Table {
+        static final Column NAME = new Column("name", TEXT);
+
+        OldTable() {
+            super("item",
+                    new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL),
+                    NAME,
+                    new Column("note", TEXT),
+                    new Index("item_name", NAME));
+        }
+    }
+
+    private static class NewTable extends Table {
+        static final Column NAME = new Column("name", TEXT, NOT_NULL,
+                new Attribute("DEFAULT ''"));
+
+        NewTable() {
+            super("item",
+                    new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL),
+                    NAME,
+                    new Column("code", TEXT, UNIQUE),
+                    new Index("item_name", NAME));
+        }
+    }
+
+    private static class AddedTable extends Table {
+        AddedTable() {
+            super("item",
+                    new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL),
+                    OldTable.NAME,
+                    new Column("note", TEXT),
+                    new Column("added", TEXT),
+                    new Index("item_name", OldTable.NAME));
+        }
+    }
+
+    private static class RecordingDatabase extends JdbcDatabase {
+        final List<String> statements = new ArrayList<>();
+
+        @Override
+        public void execSQL(String sql) {
+            statements.add(sql);
+            super.execSQL(sql);
+        }
+    }
+
+    private RecordingDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mDb = new RecordingDatabase();
+        for (String sql : new OldTable().createSchemaSql()) {
+            mDb.execSQL(sql);
+        }
+        for (int id = 1; id <= 10; id++) {
+            if (id != 5) {
+                mDb.execSQL("INSERT INTO item (id, name, note) VALUES (" + id + ", 'n" + id +
+                        "', 'x')");
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    private OnlineMigration migration() {
+        return new OnlineMigration(mDb, new NewTable(), 3);
+    }
+
+    private List<List<Object>> items() {
+        return mDb.rows("SELECT id, name FROM item ORDER BY id");
+    }
+
+    private static List<Object> item(long id, String name) {
+        return Arrays.asList(id, name);
+    }
+
+    private List<List<Object>> indexNames() {
+        return mDb.rows("SELECT name FROM sqlite_master WHERE type = 'index' AND sql NOT NULL " +
+                "ORDER BY name");
+    }
+
+    private void assertFinished() {
+        assertEquals(Arrays.asList("item", OnlineMigration.PROGRESS_TABLE), mDb.tableNames());
+        assertEquals(Collections.emptyList(),
+                mDb.rows("SELECT name FROM sqlite_master WHERE type = 'trigger'"));
+        assertEquals(Collections.emptyList(),
+                mDb.rows("SELECT * FROM " + OnlineMigration.PROGRESS_TABLE));
+    }
+
+    @Test
+    public void run_keepsWritesMadeDuringBackfill() {
+        final OnlineMigration migration = migration();
+        assertTrue(migration.start());
+        assertTrue(migration.backfill());
+
+        mDb.execSQL("UPDATE item SET name = 'updated' WHERE id = 2");
+        mDb.execSQL("DELETE FROM item WHERE id = 3");
+        mDb.execSQL("INSERT INTO item (id, name) VALUES (0, 'before')");
+        mDb.execSQL("UPDATE item SET name = 'pending' WHERE id = 8");
+        mDb.execSQL("INSERT INTO item (id, name) VALUES (11, 'after')");
+        while (migration.backfill()) {
+            // copy the next chunk.
+        }
+        migration.buildIndexes();
+        mDb.execSQL("DELETE FROM item WHERE id = 4");
+        migration.swap();
+
+        assertEquals(Arrays.asList(item(0, "before"), item(1, "n1"), item(2, "updated"),
+                item(6, "n6"), item(7, "n7"), item(8, "pending"), item(9, "n9"),
+                item(10, "n10"), item(11, "after")), items());
+        assertTrue(TableInfo.read(mDb, "item").matches(new NewTable()));
+        assertEquals(Arrays.asList(Collections.singletonList("item_name"),
+                Collections.singletonList(Table.UNIQUE_INDEX_PREFIX + "item_1")), indexNames());
+        assertFinished();
+    }
+
+    @Test
+    public void swap_buildsNoIndex() {
+        final OnlineMigration migration = migration();
+        migration.start();
+        while (migration.backfill()) {
+            // copy the next chunk.
+        }
+        migration.buildIndexes();
+
+        // the live table keeps its index under another name.
+        assertEquals(Arrays.asList(Collections.singletonList("item_name"),
+                Collections.singletonList(OnlineMigration.LIVE_INDEX_PREFIX + "item_name"),
+                Collections.singletonList(Table.UNIQUE_INDEX_PREFIX + "item_1")), indexNames());
+
+        mDb.statements.clear();
+        migration.swap();
+
+        for (String sql : mDb.statements) {
+            assertFalse(sql, sql.contains("INDEX"));
+        }
+        assertTrue(TableInfo.read(mDb, "item").matches(new NewTable()));
+        assertFinished();
+    }
+
+    @Test
+    public void swap_refusesIncompleteBackfill() {
+        final OnlineMigration migration = migration();
+        migration.start();
+        try {
+            migration.swap();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void abort_restoresLiveTable() {
+        final OnlineMigration migration = migration();
+        migration.start();
+        while (migration.backfill()) {
+            // copy the next chunk.
+        }
+        migration.buildIndexes();
+        migration.abort();
+
+        assertTrue(TableInfo.read(mDb, "item").matches(new OldTable()));
+        assertEquals(Collections.singletonList(Collections.singletonList("item_name")),
+                indexNames());
+        assertEquals(9, items().size());
+        assertFinished();
+    }
+
+    @Test
+    public void start_appliesChangesWithoutRebuild() {
+        final OnlineMigration migration = new OnlineMigration(mDb, new AddedTable(), 3);
+
+        assertFalse(migration.start());
+        assertEquals(Collections.singletonList("item"), mDb.tableNames());
+        assertEquals(9, mDb.rows("SELECT added FROM item WHERE added IS NULL").size());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RowReaderTest {
+    private static class ExampleTable extends Table {
+        static final Column ID = new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL);
+        static final Column NAME = new Column("name", TEXT);
+        static final Column SCORE = new Column("score", REAL);
+        static final Column DATA = new Column("data", BLOB);
+        static final Column CREATED = new Column("created", DATETIME);
+
+        ExampleTable() {
+            super("example", ID, NAME, SCORE, DATA, CREATED);
+        }
+    }
+
+    private static class Row {
+        long id;
+        String name;
+    }
+
+    private static FakeCursor cursor(Object[]... rows) {
+        return new FakeCursor(new String[]{"created", "data", "score", "name", "id"}, rows);
+    }
+
+    @Test
+    public void read_fillsPageByAffinity() {
+        final ExampleTable table = new ExampleTable();
+        final ColumnPage page = new ColumnPage(2, table);
+        final RowReader reader = new RowReader(cursor(
+                new Object[]{1514163600L, new byte[]{1}, 1.5, "a", 1L},
+                new Object[]{null, null, null, null, 2L},
+                new Object[]{"2017-12-25 10:00", new byte[]{2}, 2.5, "c", 3L}), table);
+
+        assertEquals(2, reader.read(page));
+        final int id = reader.indexOf(ExampleTable.ID);
+        final int name = reader.indexOf(ExampleTable.NAME);
+        final int score = reader.indexOf(ExampleTable.SCORE);
+        final int data = reader.indexOf(ExampleTable.DATA);
+        assertEquals(1L, page.getLong(id, 0));
+        assertEquals(2L, page.getLongs(id)[1]);
+        assertEquals("a", page.getString(name, 0));
+        assertEquals(1.5, page.getDouble(score, 0), 0);
+        assertArrayEquals(new byte[]{1}, page.getBlob(data, 0));
+        assertTrue(page.isNull(name, 1));
+        assertEquals(0, page.getDouble(score, 1), 0);
+
+        assertEquals(1, reader.read(page));
+        assertEquals(1, page.size());
+        assertEquals(3L, page.getLong(id, 0));
+        assertEquals(0, reader.read(page));
+    }
+
+    @Test
+    public void read_keepsStorageClassOfNumericColumns() {
+        final ExampleTable table = new ExampleTable();
+        final ColumnPage page = new ColumnPage(8, table);
+        final RowReader reader = new RowReader(cursor(
+                new Object[]{1514163600L, null, null, null, 1L},
+                new Object[]{1.5, null, null, null, 2L},
+                new Object[]{"2017-12-25 10:00", null, null, null, 3L},
+                new Object[]{null, null, null, null, 4L}), table);
+
+        assertEquals(4, reader.read(page));
+        final int created = reader.indexOf(ExampleTable.CREATED);
+        assertEquals(1514163600L, page.getValue(created, 0));
+        assertEquals(1.5, page.getValue(created, 1));
+        assertEquals("2017-12-25 10:00", page.getValue(created, 2));
+        assertNull(page.getValue(created, 3));
+        assertTrue(page.isNull(created, 3));
+    }
+
+    @Test
+    public void read_keepsValuesOfOtherStorageClasses() {
+        final Table.Column count = new Table.Column("count", Table.INTEGER);
+        final Table.Column ratio = new Table.Column("ratio", Table.REAL);
+        final ColumnPage page = new ColumnPage(3, count, ratio);
+        final RowReader reader = new RowReader(new FakeCursor(new String[]{"count", "ratio"},
+                new Object[]{1L, 0.5},
+                new Object[]{"many", "half"},
+                new Object[]{2.5, null},
+                new Object[]{3L, 1.5}), count, ratio);
+
+        assertEquals(3, reader.read(page));
+        assertTrue(page.isMixed(0));
+        assertTrue(page.isMixed(1));
+        assertEquals(1L, page.getLong(0, 0));
+        assertEquals(1L, page.getValue(0, 0));
+        assertEquals("many", page.getValue(0, 1));
+        assertEquals(2.5, page.getValue(0, 2));
+        assertEquals(0L, page.getLongs(0)[2]);
+        assertEquals("half", page.getValue(1, 1));
+        assertNull(page.getValue(1, 2));
+        try {
+            page.getLong(0, 2);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(1, reader.read(page));
+        assertFalse(page.isMixed(0));
+        assertFalse(page.isMixed(1));
+        assertEquals(3L, page.getLong(0, 0));
+        assertEquals(1.5, page.getDouble(1, 0), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getLongs_numericColumn() {
+        final ExampleTable table = new ExampleTable();
+        final ColumnPage page = new ColumnPage(1, table);
+        final RowReader reader = new RowReader(cursor(new Object[]{1L, null, null, null, 1L}),
+                table);
+        reader.read(page);
+
+        page.getLongs(reader.indexOf(ExampleTable.CREATED));
+    }
+
+    @Test
+    public void next_mapsIntoReusedRow() {
+        final RowReader reader = new RowReader(cursor(
+                new Object[]{"2017-12-25", null, null, "a", 1L},
+                new Object[]{null, null, null, "b", 2L}), ExampleTable.ID, ExampleTable.NAME,
+                ExampleTable.CREATED);
+        final Row row = new Row();
+        final RowMapper<Row> mapper = (r, target) -> {
+            target.id = r.getLong(0);
+            target.name = r.getString(ExampleTable.NAME);
+        };
+
+        assertTrue(reader.next(row, mapper));
+        assertEquals(1L, row.id);
+        assertEquals("a", row.name);
+        assertEquals("2017-12-25", reader.getValue(ExampleTable.CREATED));
+        assertTrue(reader.next(row, mapper));
+        assertEquals(2L, row.id);
+        assertEquals("b", row.name);
+        assertNull(reader.getValue(2));
+        assertFalse(reader.next(row, mapper));
+        assertEquals(2L, row.id);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_missingColumn() {
+        new RowReader(new FakeCursor(new String[]{"id"}), new ExampleTable());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_pageOfOtherColumns() {
+        final RowReader reader = new RowReader(cursor(), ExampleTable.ID);
+
+        reader.read(new ColumnPage(1, ExampleTable.NAME));
+    }
+
+    @Test
+    public void close_closesCursor() {
+        final FakeCursor cursor = cursor();
+        new RowReader(cursor, ExampleTable.ID).close();
+
+        assertTrue(cursor.isClosed());
+    }
+}
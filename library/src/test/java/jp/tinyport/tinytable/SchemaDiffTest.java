@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SchemaDiffTest {
+    private static class ItemTable extends Table {
+        static final Column ID = new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL);
+        static final Column NAME = new Column("name", TEXT);
+
+        ItemTable(Column... columns) {
+            super("item", ID, columns);
+        }
+    }
+
+    private JdbcDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mDb = new JdbcDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    private void create(Table table) {
+        for (String sql : table.createSchemaSql()) {
+            mDb.execSQL(sql);
+        }
+        for (int id = 1; id <= 3; id++) {
+            mDb.execSQL("INSERT INTO item (id, name) VALUES (" + id + ", 'n" + id + "')");
+        }
+    }
+
+    private SchemaDiff migrate(Table to) {
+        final SchemaDiff diff = SchemaDiff.compare(TableInfo.read(mDb, "item").toTable(), to);
+        for (String sql : diff.createMigrationSql("tmp_new_table_1")) {
+            mDb.execSQL(sql);
+        }
+
+        assertTrue(TableInfo.read(mDb, "item").matches(to));
+        return diff;
+    }
+
+    private List<List<Object>> names() {
+        return mDb.rows("SELECT id, name FROM item ORDER BY id");
+    }
+
+    private static List<List<Object>> names(Object... idsAndNames) {
+        final List<List<Object>> rows = new ArrayList<>();
+        for (int i = 0; i < idsAndNames.length; i += 2) {
+            rows.add(Arrays.asList(idsAndNames[i], idsAndNames[i + 1]));
+        }
+
+        return rows;
+    }
+
+    private List<List<Object>> search(String ftsName, String query) {
+        return mDb.rows("SELECT rowid FROM " + ftsName + " WHERE " + ftsName +
+                " MATCH ? ORDER BY rowid", query);
+    }
+
+    @Test
+    public void compare_sameDefinition() {
+        final Table table = new ItemTable(ItemTable.NAME,
+                new Table.Index("item_name", ItemTable.NAME),
+                new Table.FullText("item_fts", ItemTable.NAME));
+        create(table);
+
+        assertTrue(SchemaDiff.compare(TableInfo.read(mDb, "item").toTable(), table).isEmpty());
+    }
+
+    @Test
+    public void compare_addsColumnsInPlace() {
+        create(new ItemTable(ItemTable.NAME));
+
+        final SchemaDiff diff = migrate(new ItemTable(ItemTable.NAME,
+                new Table.Column("note", Table.TEXT),
+                new Table.Column("rank", Table.INTEGER, Table.NOT_NULL,
+                        new Table.Attribute("DEFAULT '0'"))));
+
+        assertFalse(diff.requiresRebuild());
+        assertEquals(2, diff.getAddedColumns().size());
+        assertEquals(names(1L, "n1", 2L, "n2", 3L, "n3"), names());
+        assertEquals(Collections.nCopies(3, Arrays.<Object>asList(null, 0L)),
+                mDb.rows("SELECT note, rank FROM item"));
+    }
+
+    @Test
+    public void compare_rebuildsForColumnsAlterTableCannotAdd() {
+        final Table from = new ItemTable(ItemTable.NAME);
+        final Table.Column[] columns = {
+                new Table.Column("note", Table.TEXT, Table.NOT_NULL),
+                new Table.Column("note", Table.TEXT, Table.UNIQUE),
+                new Table.Column("note", Table.TEXT, new Table.Attribute("DEFAULT (1 + 1)")),
+        };
+        for (Table.Column column : columns) {
+            assertTrue(column.createStatement(),
+                    SchemaDiff.compare(from, new ItemTable(ItemTable.NAME, column))
+                            .requiresRebuild());
+        }
+
+        // a common column after an added one.
+        assertTrue(SchemaDiff.compare(from, new ItemTable(
+                new Table.Column("note", Table.TEXT), ItemTable.NAME)).requiresRebuild());
+        // a new primary key.
+        assertTrue(SchemaDiff.compare(from, new Table("item",
+                new Table.Column("id", Table.INTEGER, Table.NOT_NULL),
+                new Table.Column("name", Table.TEXT, Table.PRIMARY_KEY)) {
+        }).requiresRebuild());
+    }
+
+    @Test
+    public void createMigrationSql_rebuildCopiesCommonColumns() {
+        create(new ItemTable(ItemTable.NAME,
+                new Table.Column("note", Table.TEXT),
+                new Table.Index("item_name", ItemTable.NAME)));
+        final Table.Column name = new Table.Column("name", Table.TEXT, Table.NOT_NULL,
+                new Table.Attribute("DEFAULT ''"));
+        final Table.Index index = new Table.Index("item_name", name);
+        final Table to = new ItemTable(name, index);
+
+        final SchemaDiff diff = SchemaDiff.compare(TableInfo.read(mDb, "item").toTable(), to);
+
+        assertTrue(diff.requiresRebuild());
+        assertEquals(Arrays.asList(
+                to.createSql("tmp_new_table_1"),
+                "INSERT INTO tmp_new_table_1 (id, name) SELECT id, name FROM item",
+                "DROP TABLE item",
+                "ALTER TABLE tmp_new_table_1 RENAME TO item",
+                index.createSql("item")), diff.createMigrationSql("tmp_new_table_1"));
+        migrate(to);
+        assertEquals(names(1L, "n1", 2L, "n2", 3L, "n3"), names());
+        assertEquals(Collections.singletonList("item"), mDb.tableNames());
+    }
+
+    @Test
+    public void createMigrationSql_recreatesChangedIndexOnly() {
+        create(new ItemTable(ItemTable.NAME,
+                new Table.Index("item_name", ItemTable.NAME),
+                new Table.Index("item_kept", ItemTable.NAME)));
+        final Table.Index index = new Table.Index("item_name", ItemTable.NAME, ItemTable.ID);
+
+        final SchemaDiff diff = migrate(new ItemTable(ItemTable.NAME, index,
+                new Table.Index("item_kept", ItemTable.NAME)));
+
+        assertFalse(diff.requiresRebuild());
+        assertEquals(Collections.singletonList("item_name"), diff.getDroppedIndexNames());
+        assertEquals(Collections.singletonList(index), diff.getCreatedIndexes());
+    }
+
+    @Test
+    public void createMigrationSql_createsAndIndexesFullText() {
+        create(new ItemTable(ItemTable.NAME));
+
+        final SchemaDiff diff = migrate(new ItemTable(ItemTable.NAME,
+                new Table.FullText("item_fts", ItemTable.NAME)));
+
+        assertFalse(diff.requiresRebuild());
+        assertEquals(Collections.singletonList(Collections.singletonList(2L)),
+                search("item_fts", "n2"));
+        mDb.execSQL("UPDATE item SET name = 'renamed' WHERE id = 3");
+        assertEquals(Collections.singletonList(Collections.singletonList(3L)),
+                search("item_fts", "renamed"));
+    }
+
+    @Test
+    public void createMigrationSql_dropsFullText() {
+        create(new ItemTable(ItemTable.NAME, new Table.FullText("item_fts", ItemTable.NAME)));
+
+        final SchemaDiff diff = migrate(new ItemTable(ItemTable.NAME));
+
+        assertEquals(Collections.singletonList("item_fts"), diff.getDroppedFullTextNames());
+        assertEquals(Collections.singletonList("item"), mDb.tableNames());
+        assertEquals(Collections.emptyList(),
+                mDb.rows("SELECT name FROM sqlite_master WHERE type = 'trigger'"));
+    }
+
+    @Test
+    public void createMigrationSql_rebuildReindexesFullText() {
+        create(new ItemTable(ItemTable.NAME, new Table.Column("note", Table.TEXT),
+                new Table.FullText("item_fts", ItemTable.NAME)));
+        mDb.execSQL("DELETE FROM item WHERE id = 1");
+
+        final SchemaDiff diff = migrate(new ItemTable(ItemTable.NAME,
+                new Table.FullText("item_fts", ItemTable.NAME)));
+
+        assertTrue(diff.requiresRebuild());
+        assertEquals(Collections.singletonList("item_fts"), diff.getDroppedFullTextNames());
+        assertEquals(Collections.singletonList(Collections.singletonList(2L)),
+                search("item_fts", "n2"));
+        mDb.execSQL("INSERT INTO item (id, name) VALUES (4, 'added')");
+        assertEquals(Collections.singletonList(Collections.singletonList(4L)),
+                search("item_fts", "added"));
+    }
+}
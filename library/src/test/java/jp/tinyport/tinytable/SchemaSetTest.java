@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SchemaSetTest {
+    private static class ParentTable extends Table {
+        static final Column ID = new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL);
+
+        ParentTable(Type valueType) {
+            super("parent", ID, new Column("value", valueType));
+        }
+    }
+
+    private static class ChildTable extends Table {
+        ChildTable(ParentTable parent) {
+            super("child",
+                    new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL),
+                    new Column("parent_id", INTEGER),
+                    new ForeignKey("parent_id", parent, ParentTable.ID));
+        }
+    }
+
+    @Test
+    public void getTables_referencedTablesFirst() {
+        final ParentTable parent = new ParentTable(Table.TEXT);
+        final ChildTable child = new ChildTable(parent);
+
+        assertEquals(Arrays.asList(parent, child), new SchemaSet(child, parent).getTables());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_duplicateTable() {
+        new SchemaSet(new ParentTable(Table.TEXT), new ParentTable(Table.INTEGER));
+    }
+
+    @Test
+    public void createMigrationSql_parentRebuildKeepsChildReference() {
+        final FakeDatabase db = new FakeDatabase()
+                .table("parent", "CREATE TABLE parent(id INTEGER PRIMARY KEY NOT NULL, " +
+                                "value TEXT)",
+                        new Object[]{"id", "INTEGER", 1L, null, 1L},
+                        new Object[]{"value", "TEXT", 0L, null, 0L})
+                .table("child", "CREATE TABLE child(id INTEGER PRIMARY KEY NOT NULL, " +
+                                "parent_id INTEGER, FOREIGN KEY (parent_id) REFERENCES parent(id))",
+                        new Object[]{"id", "INTEGER", 1L, null, 1L},
+                        new Object[]{"parent_id", "INTEGER", 0L, null, 0L})
+                .foreignKeys("child", new Object[]{0L, 0L, "parent", "parent_id", "id"});
+        final ParentTable parent = new ParentTable(Table.INTEGER);
+
+        final List<String> sql = new SchemaSet(new ChildTable(parent), parent)
+                .createMigrationSql(db);
+
+        // the referenced table is never renamed, so SQLite leaves the child's clause alone.
+        assertEquals(4, sql.size());
+        assertTrue(sql.get(0), sql.get(0).startsWith(
+                "CREATE TABLE " + SchemaDiff.TMP_TABLE_PREFIX));
+        final String tmpTableName = sql.get(0).substring("CREATE TABLE ".length(),
+                sql.get(0).indexOf('('));
+        assertEquals("INSERT INTO " + tmpTableName + " (id, value) SELECT id, value FROM parent",
+                sql.get(1));
+        assertEquals("DROP TABLE parent", sql.get(2));
+        assertEquals("ALTER TABLE " + tmpTableName + " RENAME TO parent", sql.get(3));
+        for (String statement : sql) {
+            assertFalse(statement, statement.startsWith("ALTER TABLE parent"));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TableArchiveTest {
+    private static class ItemTable extends Table {
+        ItemTable(Type valueType) {
+            super("item",
+                    new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL),
+                    new Column("name", TEXT),
+                    new Column("score", REAL),
+                    new Column("value", valueType));
+        }
+    }
+
+    private static final String SELECT = "SELECT id, name, score, hex(value), typeof(id), " +
+            "typeof(name), typeof(score), typeof(value) FROM item ORDER BY id";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private JdbcDatabase mSource;
+    private JdbcDatabase mTarget;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mSource = new JdbcDatabase();
+        mTarget = new JdbcDatabase();
+        mFile = mFolder.newFile();
+    }
+
+    @After
+    public void tearDown() {
+        mSource.close();
+        mTarget.close();
+    }
+
+    private static void create(JdbcDatabase db, Table table) {
+        for (String sql : table.createSchemaSql()) {
+            db.execSQL(sql);
+        }
+    }
+
+    private long export(Table table, int blockSize) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            return TableArchive.exportTo(mSource, table, file.getChannel(), blockSize);
+        }
+    }
+
+    private long importTo(Table table) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+            final FileChannel channel = file.getChannel();
+            return TableArchive.importFrom(channel, mTarget, table, 2);
+        }
+    }
+
+    @Test
+    public void importFrom_restoresValuesAndStorageClasses() throws IOException {
+        final Table table = new ItemTable(Table.BLOB);
+        create(mSource, table);
+        create(mTarget, table);
+        // BLOB affinity keeps every storage class, so the value column is mixed.
+        mSource.execSQL("INSERT INTO item VALUES (-5, 'same', 1.5, X'00ff')");
+        mSource.execSQL("INSERT INTO item VALUES (1, NULL, NULL, NULL)");
+        mSource.execSQL("INSERT INTO item VALUES (2, 'same', -0.25, 42)");
+        mSource.execSQL("INSERT INTO item VALUES (3, '\u65e5\u672c', 1e300, 'text')");
+        mSource.execSQL("INSERT INTO item VALUES (" + Long.MAX_VALUE + ", '', 0.0, 2.5)");
+        mSource.execSQL("INSERT INTO item VALUES (" + Long.MIN_VALUE + ", 'same', 3, X'')");
+        for (int id = 10; id < 20; id++) {
+            mSource.execSQL("INSERT INTO item VALUES (" + id + ", NULL, NULL, NULL)");
+        }
+
+        assertEquals(16, export(table, 3));
+        assertEquals(16, importTo(table));
+
+        assertEquals(mSource.rows(SELECT), mTarget.rows(SELECT));
+    }
+
+    @Test
+    public void importFrom_emptyTable() throws IOException {
+        final Table table = new ItemTable(Table.BLOB);
+        create(mSource, table);
+        create(mTarget, table);
+
+        assertEquals(0, export(table, TableArchive.DEFAULT_BLOCK_SIZE));
+        assertEquals(0, importTo(table));
+        assertEquals(Collections.emptyList(), mTarget.rows(SELECT));
+    }
+
+    @Test
+    public void importFrom_archiveOfAnotherTable() throws IOException {
+        final Table table = new ItemTable(Table.BLOB);
+        create(mSource, table);
+        create(mTarget, table);
+        mSource.execSQL("INSERT INTO item VALUES (1, 'name', 1.5, 1)");
+        export(table, TableArchive.DEFAULT_BLOCK_SIZE);
+
+        try {
+            importTo(new ItemTable(Table.TEXT));
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(Collections.emptyList(), mTarget.rows(SELECT));
+    }
+
+    @Test
+    public void importFrom_notAnArchive() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.write(Arrays.copyOf("SQLite format 3".getBytes("US-ASCII"), 32));
+        }
+
+        try {
+            importTo(new ItemTable(Table.BLOB));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TableInfoTest {
+    private static final String CREATE_USER = "CREATE TABLE user(" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, group_id INTEGER, name TEXT, " +
+            "email TEXT DEFAULT 'none', FOREIGN KEY (group_id) REFERENCES groups(id))";
+
+    private static class GroupTable extends Table {
+        static final Column ID = new Column("id", INTEGER, PRIMARY_KEY, NOT_NULL);
+
+        GroupTable() {
+            super("groups", ID);
+        }
+    }
+
+    private static class UserTable extends Table {
+        static final Column ID = new Column("id", INTEGER, PRIMARY_KEY, AUTOINCREMENT, NOT_NULL);
+        static final Column GROUP_ID = new Column("group_id", INTEGER);
+        static final Column NAME = new Column("name", TEXT);
+        static final Column EMAIL = new Column("email", TEXT, new Attribute("DEFAULT 'none'"));
+
+        UserTable(Column id, Column... constraints) {
+            super("user", id, concat(constraints, GROUP_ID, NAME, EMAIL));
+        }
+
+        private static Column[] concat(Column[] constraints, Column... columns) {
+            final Column[] all = Arrays.copyOf(columns, columns.length + constraints.length);
+            System.arraycopy(constraints, 0, all, columns.length, constraints.length);
+            return all;
+        }
+    }
+
+    private static FakeDatabase users(String createSql) {
+        return new FakeDatabase()
+                .table("user", createSql,
+                        new Object[]{"id", "INTEGER", 1L, null, 1L},
+                        new Object[]{"group_id", "INTEGER", 0L, null, 0L},
+                        new Object[]{"name", "TEXT", 0L, null, 0L},
+                        new Object[]{"email", "TEXT", 0L, "'none'", 0L})
+                .foreignKeys("user", new Object[]{0L, 0L, "groups", "group_id", "id"});
+    }
+
+    private static Table.ForeignKey groupKey() {
+        return new Table.ForeignKey(UserTable.GROUP_ID.name, new GroupTable(), GroupTable.ID);
+    }
+
+    @Test
+    public void read_missingTable() {
+        assertNull(TableInfo.read(new FakeDatabase(), "user"));
+    }
+
+    @Test
+    public void read_columns() {
+        final TableInfo info = TableInfo.read(users(CREATE_USER), "user");
+
+        assertEquals(Arrays.asList("id", "group_id", "name", "email"), info.getColumnNames());
+        final TableInfo.ColumnInfo id = info.getColumns().get(0);
+        assertEquals("INTEGER", id.type);
+        assertTrue(id.notNull);
+        assertEquals(1, id.primaryKeyIndex);
+        assertTrue(id.autoincrement);
+        final TableInfo.ColumnInfo email = info.getColumns().get(3);
+        assertEquals("'none'", email.defaultValue);
+        assertEquals(0, email.primaryKeyIndex);
+        assertFalse(email.autoincrement);
+        assertTrue(info.getOptions().isEmpty());
+    }
+
+    @Test
+    public void read_autoincrementInStringLiteral() {
+        final TableInfo info = TableInfo.read(users("CREATE TABLE user(" +
+                "id INTEGER PRIMARY KEY NOT NULL, group_id INTEGER, name TEXT, " +
+                "email TEXT DEFAULT 'AUTOINCREMENT')"), "user");
+
+        assertFalse(info.getColumns().get(0).autoincrement);
+    }
+
+    @Test
+    public void read_skipsPragmasTheSchemaRulesOut() {
+        final FakeDatabase db = new FakeDatabase()
+                .table("kv", "CREATE TABLE kv(key INTEGER PRIMARY KEY NOT NULL, value TEXT)",
+                        new Object[]{"key", "INTEGER", 1L, null, 1L},
+                        new Object[]{"value", "TEXT", 0L, null, 0L});
+
+        final TableInfo info = TableInfo.read(db, "kv");
+
+        assertEquals(2, db.queries.size());
+        assertTrue(info.getIndexes().isEmpty());
+        assertTrue(info.getForeignKeys().isEmpty());
+    }
+
+    @Test
+    public void read_fullTextCompanion() {
+        final String fts = "CREATE VIRTUAL TABLE user_fts USING fts5(name, " +
+                "content='user', content_rowid='id')";
+        final String insert = "CREATE TRIGGER user_fts_insert AFTER INSERT ON user BEGIN " +
+                "INSERT INTO user_fts(rowid, name) VALUES (new.id, new.name); END";
+        final FakeDatabase db = users(CREATE_USER)
+                .master("user", "table", "user_fts", fts)
+                .master("user", "table", "other_fts",
+                        "CREATE VIRTUAL TABLE other_fts USING fts5(name, content='other')")
+                .master("user", "trigger", "user_fts_insert", insert);
+
+        final TableInfo info = TableInfo.read(db, "user");
+
+        assertEquals(Collections.singleton("user_fts"), info.getFullTextNames());
+        assertEquals(fts + "\n" + insert, info.getFullTextDefinition("user_fts"));
+    }
+
+    @Test
+    public void read_options() {
+        final TableInfo info = TableInfo.read(new FakeDatabase()
+                .table("kv", "CREATE TABLE kv(key TEXT PRIMARY KEY NOT NULL, value TEXT) " +
+                                "WITHOUT ROWID, STRICT",
+                        new Object[]{"key", "TEXT", 1L, null, 1L},
+                        new Object[]{"value", "TEXT", 0L, null, 0L}), "kv");
+
+        assertEquals(EnumSet.allOf(Table.Option.class), info.getOptions());
+    }
+
+    @Test
+    public void read_foreignKeysInDeclarationOrder() {
+        // foreign_key_list numbers the keys from the last declared one.
+        final FakeDatabase db = users(CREATE_USER).foreignKeys("user",
+                new Object[]{0L, 0L, "groups", "group_id", null},
+                new Object[]{1L, 0L, "accounts", "name", "name"},
+                new Object[]{1L, 1L, "accounts", "email", "email"});
+
+        final List<TableInfo.ForeignKeyInfo> foreignKeys =
+                TableInfo.read(db, "user").getForeignKeys();
+
+        assertEquals(2, foreignKeys.size());
+        assertEquals(Arrays.asList("name", "email"), foreignKeys.get(0).getColumnNames());
+        assertEquals("(name, email) REFERENCES accounts(name, email)",
+                foreignKeys.get(0).createDefinition());
+        assertEquals("groups", foreignKeys.get(1).table);
+        assertEquals(Collections.emptyList(), foreignKeys.get(1).getReferencedColumnNames());
+        assertEquals("(group_id) REFERENCES groups", foreignKeys.get(1).createDefinition());
+    }
+
+    @Test
+    public void matches_declaredTable() {
+        final TableInfo info = TableInfo.read(users(CREATE_USER), "user");
+
+        assertTrue(info.matches(new UserTable(UserTable.ID, groupKey())));
+    }
+
+    @Test
+    public void matches_autoincrementDiffers() {
+        final TableInfo info = TableInfo.read(users(CREATE_USER), "user");
+        final Table declared = new UserTable(
+                new Table.Column("id", Table.INTEGER, Table.PRIMARY_KEY, Table.NOT_NULL),
+                groupKey());
+
+        assertFalse(info.matches(declared));
+        assertTrue(SchemaDiff.compare(info.toTable(), declared).requiresRebuild());
+    }
+
+    @Test
+    public void matches_foreignKeyDiffers() {
+        final TableInfo info = TableInfo.read(users(CREATE_USER), "user");
+        final Table declared = new UserTable(UserTable.ID);
+
+        assertFalse(info.matches(declared));
+        assertTrue(SchemaDiff.compare(info.toTable(), declared).requiresRebuild());
+    }
+
+    @Test
+    public void read_indexColumns() {
+        final TableInfo info = TableInfo.read(users(CREATE_USER).indexes("user",
+                new Object[]{"user_name", 0L, "c", 0L, "CREATE INDEX user_name ON user(name)",
+                        new String[]{"name"}},
+                new Object[]{"sqlite_autoindex_user_1", 1L, "u", 0L, null,
+                        new String[]{"email"}},
+                new Object[]{"user_lower_email", 0L, "c", 0L,
+                        "CREATE INDEX user_lower_email ON user(lower(email))",
+                        new String[]{null}}), "user");
+
+        final List<TableInfo.IndexInfo> indexes = info.getIndexes();
+        assertEquals(Collections.singletonList("name"), indexes.get(0).getColumnNames());
+        assertEquals("CREATE INDEX user_name ON user(name)", indexes.get(0).sql);
+        assertEquals(Collections.singletonList("email"), indexes.get(1).getColumnNames());
+        assertNull(indexes.get(1).sql);
+        assertEquals(Collections.singletonList(null), indexes.get(2).getColumnNames());
+        assertTrue(info.matches(new UserTable(UserTable.ID, groupKey(),
+                new Table.Unique(UserTable.EMAIL),
+                new Table.Index("user_name", UserTable.NAME),
+                new Table.Index("user_lower_email", "lower(email)"))));
+    }
+
+    @Test
+    public void toTableWithout_dropsIndexesOverColumn() {
+        final TableInfo info = TableInfo.read(users(CREATE_USER).indexes("user",
+                new Object[]{"user_name", 0L, "c", 0L, "CREATE INDEX user_name ON user(name)",
+                        new String[]{"name"}},
+                new Object[]{"user_lower_name", 0L, "c", 0L,
+                        "CREATE INDEX user_lower_name ON user(lower(name))",
+                        new String[]{null}},
+                new Object[]{"user_group", 0L, "c", 1L,
+                        "CREATE INDEX user_group ON user(group_id) WHERE name IS NOT NULL",
+                        new String[]{"group_id"}},
+                new Object[]{"user_email", 0L, "c", 0L, "CREATE INDEX user_email ON user(email)",
+                        new String[]{"email"}}), "user");
+
+        final Table table = info.toTableWithout("name");
+
+        assertEquals(Collections.singletonList("CREATE INDEX IF NOT EXISTS user_email ON " +
+                "user(email)"), table.createIndexSql());
+        assertTrue(SchemaDiff.compare(table, new UserTable(UserTable.ID, groupKey(),
+                new Table.Index("user_email", UserTable.EMAIL))).getAddedColumns().stream()
+                .anyMatch(column -> column.name.equals("name")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toTableWithout_primaryKey() {
+        TableInfo.read(users(CREATE_USER), "user").toTableWithout("id");
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2017 sukawasatoru
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.tinyport.tinytable.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.Diagnostic;
+
+import jp.tinyport.tinytable.Schema;
+import jp.tinyport.tinytable.Table;
+
+/**
+ * Generates a {@link Table} subclass for each {@link Schema}-annotated type.
+ * <p>
+ * The SQL constants of the generated class are rendered here by building the same table
+ * through the runtime API, so they are identical to what {@link Table#createSql()} would
+ * render and invalid declarations fail the build instead of the first {@code execSQL}.
+ */
+public class SchemaProcessor extends AbstractProcessor {
+    private static final String INDENT = "    ";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        // Schema.Column is read from the members of a Schema type, claimed so javac does not
+        // report it as unprocessed.
+        return new HashSet<>(Arrays.asList(Schema.class.getCanonicalName(),
+                Schema.Column.class.getCanonicalName()));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Schema.class)) {
+            try {
+                generate((TypeElement) element);
+            } catch (SchemaException e) {
+                error(e.element, e.getMessage());
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                error(element, e.getMessage());
+            } catch (IOException e) {
+                error(element, "failed to write the generated table: " + e);
+            }
+        }
+
+        return true;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        final Schema schema = type.getAnnotation(Schema.class);
+        final List<VariableElement> fields = new ArrayList<>();
+        for (Element element : type.getEnclosedElements()) {
+            if (element.getKind() == ElementKind.FIELD &&
+                    element.getAnnotation(Schema.Column.class) != null) {
+                fields.add((VariableElement) element);
+            }
+        }
+
+        if (fields.isEmpty()) {
+            throw new SchemaException(type, "no @Schema.Column in " + type.getSimpleName());
+        }
+
+        final Set<Table.Option> options = EnumSet.noneOf(Table.Option.class);
+        Collections.addAll(options, schema.options());
+
+        final List<Table.Column> columns = new ArrayList<>();
+        final StringBuilder columnFields = new StringBuilder();
+        final StringBuilder superArguments = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            final VariableElement field = fields.get(i);
+            final Object constant = field.getConstantValue();
+            if (!(constant instanceof String)) {
+                throw new SchemaException(field, "@Schema.Column must be a String constant");
+            }
+
+            final String name = (String) constant;
+            final String fieldName = field.getSimpleName().toString();
+            final Schema.Column column = field.getAnnotation(Schema.Column.class);
+            if (1 < column.defaultValue().length) {
+                throw new SchemaException(field, "more than one defaultValue");
+            }
+
+            final Table.Column runtimeColumn = RenderedTable.column(name, column);
+            if (runtimeColumn == null) {
+                throw new SchemaException(field, "unknown type: " + column.type());
+            }
+            columns.add(runtimeColumn);
+
+            columnFields.append(INDENT).append("public static final String COLUMN_")
+                    .append(fieldName).append(" = ").append(literal(name)).append(";\n")
+                    .append(INDENT).append("public static final int COLUMN_")
+                    .append(fieldName).append("_INDEX = ").append(i).append(";\n")
+                    .append(INDENT).append("public static final Column ").append(fieldName)
+                    .append(" = new Column(COLUMN_").append(fieldName).append(", Table.")
+                    .append(column.type().replace(' ', '_'))
+                    .append(attributeArguments(column)).append(");\n\n");
+            superArguments.append(",\n").append(INDENT).append(INDENT).append(INDENT)
+                    .append(INDENT).append(fieldName);
+        }
+
+        if (schema.primaryKey().length != 0) {
+            columns.add(new Table.PrimaryKey(schema.primaryKey()[0],
+                    (Object[]) rest(schema.primaryKey())));
+            appendConstraint(superArguments, "PrimaryKey", schema.primaryKey());
+        }
+
+        for (Schema.Keys keys : schema.unique()) {
+            if (keys.value().length == 0) {
+                throw new SchemaException(type, "empty @Schema.Keys");
+            }
+            columns.add(new Table.Unique(keys.value()[0], (Object[]) rest(keys.value())));
+            appendConstraint(superArguments, "Unique", keys.value());
+        }
+
+        for (Schema.Index index : schema.indexes()) {
+            if (index.keys().length == 0) {
+                throw new SchemaException(type, "no keys in @Schema.Index " + index.name());
+            }
+
+            Table.Index runtimeIndex = new Table.Index(index.name(), index.keys()[0],
+                    (Object[]) rest(index.keys()));
+            superArguments.append(",\n").append(INDENT).append(INDENT).append(INDENT)
+                    .append(INDENT).append("new Index(").append(literal(index.name()));
+            for (String key : index.keys()) {
+                superArguments.append(", ").append(literal(key));
+            }
+            superArguments.append(')');
+            if (index.unique()) {
+                runtimeIndex = runtimeIndex.unique();
+                superArguments.append(".unique()");
+            }
+            if (!index.where().isEmpty()) {
+                runtimeIndex = runtimeIndex.where(index.where());
+                superArguments.append(".where(").append(literal(index.where())).append(')');
+            }
+            columns.add(runtimeIndex);
+        }
+
+        final Table table = new RenderedTable(schema.name(), options, columns);
+        final String packageName =
+                processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        final String className = type.getSimpleName() + "Table";
+        final String qualifiedName =
+                packageName.isEmpty() ? className : packageName + "." + className;
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile(qualifiedName, type)
+                .openWriter()) {
+            writer.write(render(type, packageName, className, table, options, columnFields,
+                    superArguments));
+        }
+    }
+
+    private static String render(TypeElement type, String packageName, String className,
+            Table table, Set<Table.Option> options, CharSequence columnFields,
+            CharSequence superArguments) {
+        final StringBuilder builder = new StringBuilder()
+                .append("// Generated by ").append(SchemaProcessor.class.getSimpleName())
+                .append(" from ").append(type.getQualifiedName()).append(". Do not edit.\n");
+        if (!packageName.isEmpty()) {
+            builder.append("package ").append(packageName).append(";\n");
+        }
+        builder.append('\n')
+                .append("import java.util.ArrayList;\n")
+                .append("import java.util.Arrays;\n");
+        if (!options.isEmpty()) {
+            builder.append("import java.util.EnumSet;\n");
+        }
+        builder.append("import java.util.List;\n")
+                .append('\n')
+                .append("import jp.tinyport.tinytable.Table;\n")
+                .append('\n')
+                .append("public final class ").append(className).append(" extends Table {\n")
+                .append(INDENT).append("public static final String TABLE_NAME = ")
+                .append(literal(table.tableName)).append(";\n")
+                .append(INDENT).append("public static final String CREATE_SQL = ")
+                .append(literal(table.createSql())).append(";\n")
+                .append('\n')
+                .append(INDENT).append("private static final String[] CREATE_INDEX_SQL = {");
+        for (String sql : table.createIndexSql()) {
+            builder.append('\n').append(INDENT).append(INDENT).append(INDENT)
+                    .append(literal(sql)).append(',');
+        }
+        builder.append("\n").append(INDENT).append("};\n")
+                .append('\n')
+                .append(columnFields)
+                .append(INDENT).append("public ").append(className).append("() {\n")
+                .append(INDENT).append(INDENT).append("super(TABLE_NAME");
+        if (!options.isEmpty()) {
+            builder.append(", EnumSet.of(");
+            boolean firstTime = true;
+            for (Table.Option option : options) {
+                if (firstTime) {
+                    firstTime = false;
+                } else {
+                    builder.append(", ");
+                }
+                builder.append("Option.").append(option.name());
+            }
+            builder.append(')');
+        }
+
+        return builder.append(superArguments).append(");\n")
+                .append(INDENT).append("}\n")
+                .append('\n')
+                .append(INDENT).append("@Override\n")
+                .append(INDENT).append("public String createSql() {\n")
+                .append(INDENT).append(INDENT).append("return CREATE_SQL;\n")
+                .append(INDENT).append("}\n")
+                .append('\n')
+                .append(INDENT).append("@Override\n")
+                .append(INDENT).append("public List<String> createIndexSql() {\n")
+                .append(INDENT).append(INDENT)
+                .append("return new ArrayList<>(Arrays.asList(CREATE_INDEX_SQL));\n")
+                .append(INDENT).append("}\n")
+                .append("}\n")
+                .toString();
+    }
+
+    private static String attributeArguments(Schema.Column column) {
+        final StringBuilder builder = new StringBuilder();
+        if (column.primaryKey()) {
+            builder.append(", Table.PRIMARY_KEY");
+        }
+        if (column.autoincrement()) {
+            builder.append(", Table.AUTOINCREMENT");
+        }
+        if (column.notNull()) {
+            builder.append(", Table.NOT_NULL");
+        }
+        if (column.unique()) {
+            builder.append(", Table.UNIQUE");
+        }
+        if (column.defaultValue().length != 0) {
+            builder.append(", Table.DEFAULT(").append(literal(column.defaultValue()[0]))
+                    .append(')');
+        }
+
+        return builder.toString();
+    }
+
+    private static void appendConstraint(StringBuilder builder, String constraint,
+            String[] keys) {
+        builder.append(",\n").append(INDENT).append(INDENT).append(INDENT).append(INDENT)
+                .append("new ").append(constraint).append('(');
+        for (int i = 0; i < keys.length; i++) {
+            if (i != 0) {
+                builder.append(", ");
+            }
+            builder.append(literal(keys[i]));
+        }
+        builder.append(')');
+    }
+
+    private static String[] rest(String[] keys) {
+        final String[] rest = new String[keys.length - 1];
+        System.arraycopy(keys, 1, rest, 0, rest.length);
+
+        return rest;
+    }
+
+    private static String literal(String string) {
+        final StringBuilder builder = new StringBuilder(string.length() + 2).append('"');
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || 0x7e < c) {
+                        builder.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+
+        return builder.append('"').toString();
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static class SchemaException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        // only caught within the same processing round, never serialized.
+        final transient Element element;
+
+        SchemaException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    /**
+     * Builds the declared table through the public {@link Table} API, which is only reachable
+     * from a subclass.
+     */
+    private static final class RenderedTable extends Table {
+        RenderedTable(String tableName, Set<Option> options, List<Column> columns) {
+            super(tableName, options, columns.get(0),
+                    columns.subList(1, columns.size()).toArray(new Column[columns.size() - 1]));
+        }
+
+        /**
+         * @return null if {@code column.type()} is not a type of {@link Table}.
+         */
+        static Column column(String name, Schema.Column column) {
+            final List<Attribute> list = new ArrayList<>();
+            if (column.primaryKey()) {
+                list.add(PRIMARY_KEY);
+            }
+            if (column.autoincrement()) {
+                list.add(AUTOINCREMENT);
+            }
+            if (column.notNull()) {
+                list.add(NOT_NULL);
+            }
+            if (column.unique()) {
+                list.add(UNIQUE);
+            }
+            if (column.defaultValue().length != 0) {
+                list.add(DEFAULT(column.defaultValue()[0]));
+            }
+
+            final Attribute[] attributes = list.toArray(new Attribute[list.size()]);
+            switch (column.type()) {
+                case "INTEGER":
+                    return new Column(name, INTEGER, attributes);
+                case "INT":
+                    return new Column(name, INT, attributes);
+                case "TINYINT":
+                    return new Column(name, TINYINT, attributes);
+                case "SMALLINT":
+                    return new Column(name, SMALLINT, attributes);
+                case "MEDIUMINT":
+                    return new Column(name, MEDIUMINT, attributes);
+                case "BIGINT":
+                    return new Column(name, BIGINT, attributes);
+                case "UNSIGNED BIG INT":
+                    return new Column(name, UNSIGNED_BIG_INT, attributes);
+                case "INT2":
+                    return new Column(name, INT2, attributes);
+                case "INT8":
+                    return new Column(name, INT8, attributes);
+                case "TEXT":
+                    return new Column(name, TEXT, attributes);
+                case "CLOB":
+                    return new Column(name, CLOB, attributes);
+                case "BLOB":
+                    return new Column(name, BLOB, attributes);
+                case "REAL":
+                    return new Column(name, REAL, attributes);
+                case "DOUBLE":
+                    return new Column(name, DOUBLE, attributes);
+                case "DOUBLE PRECISION":
+                    return new Column(name, DOUBLE_PRECISION, attributes);
+                case "FLOAT":
+                    return new Column(name, FLOAT, attributes);
+                case "NUMERIC":
+                    return new Column(name, NUMERIC, attributes);
+                case "BOOLEAN":
+                    return new Column(name, BOOLEAN, attributes);
+                case "DATE":
+                    return new Column(name, DATE, attributes);
+                case "DATETIME":
+                    return new Column(name, DATETIME, attributes);
+                case "ANY":
+                    return new Column(name, ANY, attributes);
+                default:
+                    return null;
+            }
+        }
+    }
+}